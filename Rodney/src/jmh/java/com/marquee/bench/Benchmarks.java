@@ -0,0 +1,23 @@
+package com.marquee.bench;
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the benchmark suite with the GC profiler attached, so every result
+ * comes with its allocation rate (gc.alloc.rate.norm, bytes per op).
+ *
+ * Usage: java -jar target/benchmarks.jar [regex]
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "com\\.marquee\\.bench\\..*")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
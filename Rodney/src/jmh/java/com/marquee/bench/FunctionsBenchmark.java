@@ -0,0 +1,47 @@
+package com.marquee.bench;
+
+import com.marquee.ai.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionsBenchmark {
+
+    @Param({"4", "16"})
+    public int actions;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private ArrayList<Double> qValues;
+    private ArrayList<Transition> batch;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+
+        qValues = new ArrayList<>(actions);
+        for (int i = 0; i < actions; i++)
+            qValues.add(rnd.nextGaussian());
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++)
+            batch.add(new Transition(null, 0, null, 4 * rnd.nextGaussian()));
+    }
+
+    @Benchmark
+    public double[] actionsPR() {
+        return Functions.actionsPR(qValues, 0.5);
+    }
+
+    @Benchmark
+    public double huberLoss() {
+        return Functions.huberLoss(batch);
+    }
+}
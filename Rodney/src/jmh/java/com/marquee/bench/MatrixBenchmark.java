@@ -0,0 +1,78 @@
+package com.marquee.bench;
+
+import com.marquee.ai.*;
+import jama.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    // m x n times n x p
+    @Param({"1x32x32", "1x128x128", "32x32x32", "64x128x128", "256x256x256"})
+    public String shape;
+
+    private Matrix a;
+    private Matrix b;
+    private Matrix x;
+
+    // m x n operands and destination for the element-wise chains
+    private Matrix c;
+    private Matrix d;
+    private Matrix y;
+
+    @Setup
+    public void setup() {
+        String[] dims = shape.split("x");
+        int m = Integer.parseInt(dims[0]);
+        int n = Integer.parseInt(dims[1]);
+        int p = Integer.parseInt(dims[2]);
+
+        a = Matrix.random(m, n);
+        b = Matrix.random(n, p);
+        x = new Matrix(m, p);
+        c = Matrix.random(m, n);
+        d = Matrix.random(m, n);
+        y = new Matrix(m, n);
+    }
+
+    @Benchmark
+    public Matrix times() {
+        return a.times(b);
+    }
+
+    @Benchmark
+    public Matrix timesInto() {
+        return a.timesInto(b, x);
+    }
+
+    @Benchmark
+    public Matrix applyFunc() {
+        return a.applyFunc(Functions::relu);
+    }
+
+    @Benchmark
+    public Matrix applyFuncEquals() {
+        return a.applyFuncEquals(Functions::relu);
+    }
+
+    @Benchmark
+    public Matrix elementwiseChain() {
+        return a.times(0.5).plus(c).arrayTimes(d);
+    }
+
+    @Benchmark
+    public Matrix elementwiseLazy() {
+        return a.lazy().times(0.5).plus(c).arrayTimes(d).into(y);
+    }
+
+    @Benchmark
+    public Matrix reluEquals() {
+        return Functions.reluEquals(a);
+    }
+}
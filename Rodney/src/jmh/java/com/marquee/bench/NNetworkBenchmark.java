@@ -0,0 +1,58 @@
+package com.marquee.bench;
+
+import com.marquee.ai.nn.*;
+import jama.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NNetworkBenchmark {
+
+    // inputSize x hiddenSize x hiddenNum x outputSize
+    @Param({"8x32x2x4", "16x64x2x8", "32x128x3x8"})
+    public String shape;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private NNetwork network;
+    private Matrix state;
+    private double[] stateArray;
+    private double[] out;
+    private Matrix batch;
+
+    @Setup
+    public void setup() {
+        String[] dims = shape.split("x");
+        int inputSize = Integer.parseInt(dims[0]);
+        int hiddenSize = Integer.parseInt(dims[1]);
+        int hiddenNum = Integer.parseInt(dims[2]);
+        int outputSize = Integer.parseInt(dims[3]);
+
+        network = new NNetwork(inputSize, outputSize, hiddenSize, hiddenNum);
+        state = Matrix.random(1, inputSize);
+        stateArray = state.getRowPackedCopy();
+        out = new double[outputSize];
+        batch = Matrix.random(batchSize, inputSize);
+    }
+
+    @Benchmark
+    public Matrix foward() {
+        return network.foward(state);
+    }
+
+    @Benchmark
+    public double[] fowardInto() {
+        return network.foward(stateArray, out);
+    }
+
+    @Benchmark
+    public Matrix fowardBatch() {
+        return network.fowardBatch(batch);
+    }
+}
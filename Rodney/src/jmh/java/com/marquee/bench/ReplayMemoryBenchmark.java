@@ -0,0 +1,83 @@
+package com.marquee.bench;
+
+import com.marquee.ai.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayMemoryBenchmark {
+
+    private static final int CAPACITY = 100000;
+    private static final int STATE_SIZE = 16;
+
+    // Fraction of the capacity filled before measuring.
+    @Param({"0.01", "0.5", "1.0"})
+    public double fill;
+
+    @Param({"32", "256"})
+    public int batchSize;
+
+    private ReplayMemory memory;
+    private ArrayReplayMemory arrayMemory;
+    private PrioritizedReplayMemory prioritizedMemory;
+
+    private Transition transition;
+    private Transition[] transitions;
+    private double[] state;
+    private Batch batch;
+
+    @Setup
+    public void setup() {
+        memory = new ReplayMemory(CAPACITY, 42);
+        arrayMemory = new ArrayReplayMemory(CAPACITY, STATE_SIZE, 42);
+        prioritizedMemory = new PrioritizedReplayMemory(CAPACITY, STATE_SIZE, 0.6, 42);
+
+        state = new double[STATE_SIZE];
+        transition = new Transition(state, 0, state, 1);
+        transitions = new Transition[batchSize];
+        batch = new Batch(batchSize, STATE_SIZE);
+
+        int n = Math.max(batchSize, (int) (fill * CAPACITY));
+        for (int i = 0; i < n; i++) {
+            memory.push(transition);
+            arrayMemory.push(state, i % 4, 1, state, false);
+            prioritizedMemory.push(state, i % 4, 1, state, false);
+        }
+    }
+
+    @Benchmark
+    public void push() {
+        memory.push(transition);
+    }
+
+    @Benchmark
+    public ArrayList<Transition> sample() {
+        return memory.sample(batchSize);
+    }
+
+    @Benchmark
+    public Transition[] sampleInto() {
+        return memory.sample(transitions, batchSize, false);
+    }
+
+    @Benchmark
+    public int arrayPush() {
+        return arrayMemory.push(state, 1, 1, state, false);
+    }
+
+    @Benchmark
+    public Batch arraySample() {
+        return arrayMemory.sample(batch);
+    }
+
+    @Benchmark
+    public Batch prioritizedSample() {
+        return prioritizedMemory.sample(batch, 0.4);
+    }
+}
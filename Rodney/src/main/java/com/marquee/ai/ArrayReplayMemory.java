@@ -0,0 +1,128 @@
+package com.marquee.ai;
+
+import java.util.*;
+
+/**
+ * Replay memory kept in flat primitive ring arrays instead of Transition
+ * objects. Each slot takes stateSize doubles for the state and next state
+ * plus an action, a reward and a done flag, and nothing is allocated after
+ * construction.
+ */
+public class ArrayReplayMemory {
+
+    private int position;
+    private int size;
+    private final int capacity;
+    private final int stateSize;
+
+    private final double[] states;
+    private final double[] nextStates;
+    private final int[] actions;
+    private final double[] rewards;
+    private final boolean[] dones;
+
+    private final IndexSampler sampler;
+
+    public ArrayReplayMemory(int capacity, int stateSize, long seed) throws IllegalArgumentException {
+        if (capacity <= 0 || stateSize <= 0)
+            throw new IllegalArgumentException("Illegal size: " + capacity + "x" + stateSize);
+
+        this.states = new double[capacity * stateSize];
+        this.nextStates = new double[capacity * stateSize];
+        this.actions = new int[capacity];
+        this.rewards = new double[capacity];
+        this.dones = new boolean[capacity];
+        this.sampler = new IndexSampler(capacity, new Random(seed));
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+        this.position = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Stores a transition, overwriting the oldest one once full.
+     *
+     * @return the slot the transition was written to.
+     */
+    public int push(double[] state, int action, double reward, double[] nextState, boolean done) {
+        if (state.length != this.stateSize || nextState.length != this.stateSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        int slot = this.position;
+        System.arraycopy(state, 0, this.states, slot * this.stateSize, this.stateSize);
+        System.arraycopy(nextState, 0, this.nextStates, slot * this.stateSize, this.stateSize);
+        this.actions[slot] = action;
+        this.rewards[slot] = reward;
+        this.dones[slot] = done;
+
+        if (this.size < this.capacity)
+            this.size++;
+
+        this.position = ++this.position % this.capacity;
+        return slot;
+    }
+
+    /**
+     * Fills the batch with distinct uniformly drawn transitions.
+     */
+    public Batch sample(Batch batch) throws IllegalArgumentException {
+        return sample(batch, false);
+    }
+
+    /**
+     * Fills the batch with uniformly drawn transitions, with or without
+     * replacement.
+     */
+    public Batch sample(Batch batch, boolean replacement) throws IllegalArgumentException {
+        if (batch.getStateSize() != this.stateSize)
+            throw new IllegalArgumentException("Illegal state size: " + batch.getStateSize());
+
+        if (replacement)
+            this.sampler.withReplacement(this.size, batch.getIndices(), batch.size());
+        else
+            this.sampler.withoutReplacement(this.size, batch.getIndices(), batch.size());
+
+        return gather(batch);
+    }
+
+    /**
+     * Copies the transitions at batch.getIndices() into the batch arrays and
+     * resets their importance-sampling weights to 1.
+     */
+    public Batch gather(Batch batch) {
+        int[] indices = batch.getIndices();
+        double[] s = batch.getStates().getFlatArray();
+        double[] ns = batch.getNextStates().getFlatArray();
+
+        for (int i = 0; i < batch.size(); i++) {
+            int slot = indices[i];
+            System.arraycopy(this.states, slot * this.stateSize, s, i * this.stateSize, this.stateSize);
+            System.arraycopy(this.nextStates, slot * this.stateSize, ns, i * this.stateSize, this.stateSize);
+            batch.getActions()[i] = this.actions[slot];
+            batch.getRewards()[i] = this.rewards[slot];
+            batch.getDones()[i] = this.dones[slot];
+            batch.getWeights()[i] = 1;
+        }
+        return batch;
+    }
+
+    public int len() {
+        return this.size;
+    }
+
+    /**
+     * Slot the next push writes to. The most recent transition is in the slot
+     * before it.
+     */
+    public int getPosition() {
+        return this.position;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getStateSize() {
+        return this.stateSize;
+    }
+}
@@ -0,0 +1,79 @@
+package com.marquee.ai;
+
+import jama.*;
+import java.util.*;
+
+/**
+ * Reusable minibatch of transitions laid out for {@link com.marquee.ai.nn.NNetwork}:
+ * states and next states are batchSize x stateSize matrices, one transition
+ * per row.
+ */
+public class Batch {
+
+    private final int size;
+    private final int stateSize;
+
+    private final Matrix states;
+    private final Matrix nextStates;
+    private final int[] actions;
+    private final double[] rewards;
+    private final boolean[] dones;
+    private final int[] indices;
+    private final double[] weights;
+
+    public Batch(int size, int stateSize) {
+        this.size = size;
+        this.stateSize = stateSize;
+        this.states = new Matrix(size, stateSize);
+        this.nextStates = new Matrix(size, stateSize);
+        this.actions = new int[size];
+        this.rewards = new double[size];
+        this.dones = new boolean[size];
+        this.indices = new int[size];
+        this.weights = new double[size];
+        Arrays.fill(this.weights, 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStateSize() {
+        return stateSize;
+    }
+
+    public Matrix getStates() {
+        return states;
+    }
+
+    public Matrix getNextStates() {
+        return nextStates;
+    }
+
+    public int[] getActions() {
+        return actions;
+    }
+
+    public double[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Buffer slots the transitions were gathered from.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Importance-sampling weights of the transitions, all 1 unless the batch
+     * was last filled by a {@link PrioritizedReplayMemory}.
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+}
@@ -0,0 +1,152 @@
+package com.marquee.ai;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Replay memory that any number of threads can push to and sample from at
+ * once, without locks. It uses the flat ring layout of
+ * {@link ArrayReplayMemory}.
+ *
+ * Writers claim slots from an atomic ticket counter and publish each one
+ * through a per-slot sequence number. The number is odd while the slot is
+ * being written and even once it holds a complete transition. Writers only
+ * wait for each other when one laps the ring onto a slot that is still being
+ * written. Samplers copy a slot optimistically and keep the copy only if its
+ * sequence number was even and unchanged across the copy, so they never see
+ * a torn transition.
+ */
+public class ConcurrentReplayMemory {
+
+    private final int capacity;
+    private final int stateSize;
+
+    private final double[] states;
+    private final double[] nextStates;
+    private final int[] actions;
+    private final double[] rewards;
+    private final boolean[] dones;
+
+    // Next ticket to hand out, ticket t goes to slot t % capacity.
+    private final AtomicLong tickets;
+
+    // Per slot, 0 while empty, 2t+1 while ticket t is written, 2t+2 after.
+    private final AtomicLongArray sequences;
+
+    public ConcurrentReplayMemory(int capacity, int stateSize) throws IllegalArgumentException {
+        if (capacity <= 0 || stateSize <= 0)
+            throw new IllegalArgumentException("Illegal size: " + capacity + "x" + stateSize);
+
+        this.states = new double[capacity * stateSize];
+        this.nextStates = new double[capacity * stateSize];
+        this.actions = new int[capacity];
+        this.rewards = new double[capacity];
+        this.dones = new boolean[capacity];
+        this.tickets = new AtomicLong();
+        this.sequences = new AtomicLongArray(capacity);
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+    }
+
+    /**
+     * Stores a transition, overwriting the oldest one once full. Safe to call
+     * from any number of threads.
+     *
+     * @return the slot the transition was written to, or -1 if the writer was
+     * delayed long enough for a newer transition to take its slot first.
+     */
+    public int push(double[] state, int action, double reward, double[] nextState, boolean done) {
+        if (state.length != this.stateSize || nextState.length != this.stateSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        long ticket = this.tickets.getAndIncrement();
+        int slot = (int) (ticket % this.capacity);
+        long writing = 2 * ticket + 1;
+
+        while (true) {
+            long seq = this.sequences.get(slot);
+            if (seq > writing)
+                return -1;
+            if ((seq & 1) == 0 && this.sequences.compareAndSet(slot, seq, writing))
+                break;
+            Thread.yield();
+        }
+
+        System.arraycopy(state, 0, this.states, slot * this.stateSize, this.stateSize);
+        System.arraycopy(nextState, 0, this.nextStates, slot * this.stateSize, this.stateSize);
+        this.actions[slot] = action;
+        this.rewards[slot] = reward;
+        this.dones[slot] = done;
+
+        this.sequences.lazySet(slot, writing + 1);
+        return slot;
+    }
+
+    /**
+     * Fills the batch with uniformly drawn transitions, with replacement.
+     * Slots that are empty or being written while drawn are skipped and
+     * drawn again. Safe to call from any number of threads, concurrently with
+     * push.
+     */
+    public Batch sample(Batch batch) throws IllegalArgumentException {
+        if (batch.getStateSize() != this.stateSize)
+            throw new IllegalArgumentException("Illegal state size: " + batch.getStateSize());
+
+        int size = len();
+        if (size == 0)
+            throw new IllegalArgumentException("Illegal size: " + size);
+
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int[] indices = batch.getIndices();
+        for (int i = 0; i < batch.size(); i++) {
+            int slot = rnd.nextInt(size);
+            while (!read(slot, batch, i)) {
+                Thread.yield();
+                slot = rnd.nextInt(size);
+            }
+            indices[i] = slot;
+        }
+        return batch;
+    }
+
+    // Copies slot into row i of the batch, false if it was not a complete
+    // transition for the whole copy.
+    private boolean read(int slot, Batch batch, int i) {
+        long seq = this.sequences.get(slot);
+        if (seq == 0 || (seq & 1) != 0)
+            return false;
+
+        System.arraycopy(this.states, slot * this.stateSize, batch.getStates().getFlatArray(), i * this.stateSize, this.stateSize);
+        System.arraycopy(this.nextStates, slot * this.stateSize, batch.getNextStates().getFlatArray(), i * this.stateSize, this.stateSize);
+        batch.getActions()[i] = this.actions[slot];
+        batch.getRewards()[i] = this.rewards[slot];
+        batch.getDones()[i] = this.dones[slot];
+        batch.getWeights()[i] = 1;
+
+        // A CAS rather than a second get: as a volatile write it orders the
+        // copy before the claim of any writer that finds this value.
+        return this.sequences.compareAndSet(slot, seq, seq);
+    }
+
+    /**
+     * Number of slots handed out so far, at most the capacity.
+     */
+    public int len() {
+        return (int) Math.min(this.tickets.get(), this.capacity);
+    }
+
+    /**
+     * Number of push calls so far.
+     */
+    public long getPushed() {
+        return this.tickets.get();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getStateSize() {
+        return this.stateSize;
+    }
+}
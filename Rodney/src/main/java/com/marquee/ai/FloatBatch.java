@@ -0,0 +1,66 @@
+package com.marquee.ai;
+
+import jama.*;
+
+/**
+ * Single-precision {@link Batch}, laid out for
+ * {@link com.marquee.ai.nn.FloatNNetwork}.
+ */
+public class FloatBatch {
+
+    private final int size;
+    private final int stateSize;
+
+    private final FloatMatrix states;
+    private final FloatMatrix nextStates;
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final int[] indices;
+
+    public FloatBatch(int size, int stateSize) {
+        this.size = size;
+        this.stateSize = stateSize;
+        this.states = new FloatMatrix(size, stateSize);
+        this.nextStates = new FloatMatrix(size, stateSize);
+        this.actions = new int[size];
+        this.rewards = new float[size];
+        this.dones = new boolean[size];
+        this.indices = new int[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStateSize() {
+        return stateSize;
+    }
+
+    public FloatMatrix getStates() {
+        return states;
+    }
+
+    public FloatMatrix getNextStates() {
+        return nextStates;
+    }
+
+    public int[] getActions() {
+        return actions;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Buffer slots the transitions were gathered from.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+}
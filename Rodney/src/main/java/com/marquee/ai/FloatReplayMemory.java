@@ -0,0 +1,116 @@
+package com.marquee.ai;
+
+import java.util.*;
+
+/**
+ * Single-precision {@link ArrayReplayMemory}. States and rewards are kept as
+ * floats, halving the footprint of a buffer of the same capacity.
+ */
+public class FloatReplayMemory {
+
+    private int position;
+    private int size;
+    private final int capacity;
+    private final int stateSize;
+
+    private final float[] states;
+    private final float[] nextStates;
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] dones;
+
+    private final IndexSampler sampler;
+
+    public FloatReplayMemory(int capacity, int stateSize, long seed) throws IllegalArgumentException {
+        if (capacity <= 0 || stateSize <= 0)
+            throw new IllegalArgumentException("Illegal size: " + capacity + "x" + stateSize);
+
+        this.states = new float[capacity * stateSize];
+        this.nextStates = new float[capacity * stateSize];
+        this.actions = new int[capacity];
+        this.rewards = new float[capacity];
+        this.dones = new boolean[capacity];
+        this.sampler = new IndexSampler(capacity, new Random(seed));
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+        this.position = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Stores a transition, overwriting the oldest one once full.
+     *
+     * @return the slot the transition was written to.
+     */
+    public int push(float[] state, int action, float reward, float[] nextState, boolean done) {
+        if (state.length != this.stateSize || nextState.length != this.stateSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        int slot = this.position;
+        System.arraycopy(state, 0, this.states, slot * this.stateSize, this.stateSize);
+        System.arraycopy(nextState, 0, this.nextStates, slot * this.stateSize, this.stateSize);
+        this.actions[slot] = action;
+        this.rewards[slot] = reward;
+        this.dones[slot] = done;
+
+        if (this.size < this.capacity)
+            this.size++;
+
+        this.position = ++this.position % this.capacity;
+        return slot;
+    }
+
+    /**
+     * Fills the batch with distinct uniformly drawn transitions.
+     */
+    public FloatBatch sample(FloatBatch batch) throws IllegalArgumentException {
+        return sample(batch, false);
+    }
+
+    /**
+     * Fills the batch with uniformly drawn transitions, with or without
+     * replacement.
+     */
+    public FloatBatch sample(FloatBatch batch, boolean replacement) throws IllegalArgumentException {
+        if (batch.getStateSize() != this.stateSize)
+            throw new IllegalArgumentException("Illegal state size: " + batch.getStateSize());
+
+        if (replacement)
+            this.sampler.withReplacement(this.size, batch.getIndices(), batch.size());
+        else
+            this.sampler.withoutReplacement(this.size, batch.getIndices(), batch.size());
+
+        return gather(batch);
+    }
+
+    /**
+     * Copies the transitions at batch.getIndices() into the batch arrays.
+     */
+    public FloatBatch gather(FloatBatch batch) {
+        int[] indices = batch.getIndices();
+        float[] s = batch.getStates().getFlatArray();
+        float[] ns = batch.getNextStates().getFlatArray();
+
+        for (int i = 0; i < batch.size(); i++) {
+            int slot = indices[i];
+            System.arraycopy(this.states, slot * this.stateSize, s, i * this.stateSize, this.stateSize);
+            System.arraycopy(this.nextStates, slot * this.stateSize, ns, i * this.stateSize, this.stateSize);
+            batch.getActions()[i] = this.actions[slot];
+            batch.getRewards()[i] = this.rewards[slot];
+            batch.getDones()[i] = this.dones[slot];
+        }
+        return batch;
+    }
+
+    public int len() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getStateSize() {
+        return this.stateSize;
+    }
+}
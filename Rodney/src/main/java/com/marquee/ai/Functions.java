@@ -1,5 +1,6 @@
 package com.marquee.ai;
 
+import jama.*;
 import java.util.*;
 import java.util.stream.*;
 
@@ -12,19 +13,116 @@ public class Functions {
     }
 
     public static double LFunction(double δ) {
-        return Math.abs(δ) <= 1 ? Math.pow(δ, 2) / 2 : δ - 1.0 / 2;
+        return Math.abs(δ) <= 1 ? Math.pow(δ, 2) / 2 : Math.abs(δ) - 1.0 / 2;
+    }
+
+    /**
+     * Fused TD-target and Huber loss over a minibatch. In one pass it computes
+     * δ = Q(s,a) - (r + γ max Q'(s',·)), the mean (optionally
+     * importance-weighted) Huber loss, its gradient with respect to each
+     * Q(s,a) and the |δ| used for priority updates.
+     *
+     * @param qValues Q(s,a) of the taken actions.
+     * @param maxNextQ max Q'(s',·) from the target network.
+     * @param weights importance-sampling weights, or null for uniform.
+     * @param grad receives dLoss/dQ(s,a).
+     * @param absδ receives |δ|, may be null.
+     * @param n batch size.
+     * @return the loss.
+     */
+    public static double huberLoss(double[] qValues, double[] maxNextQ, double[] rewards,
+            boolean[] dones, double γ, double[] weights, double[] grad, double[] absδ, int n) {
+        double loss = 0;
+        for (int i = 0; i < n; i++) {
+            double target = rewards[i] + (dones[i] ? 0 : γ * maxNextQ[i]);
+            double δ = qValues[i] - target;
+            double a = Math.abs(δ);
+            double w = weights == null ? 1.0 / n : weights[i] / n;
+
+            if (a <= 1) {
+                loss += w * δ * δ / 2;
+                grad[i] = w * δ;
+            } else {
+                loss += w * (a - 1.0 / 2);
+                grad[i] = δ > 0 ? w : -w;
+            }
+
+            if (absδ != null)
+                absδ[i] = a;
+        }
+        return loss;
     }
 
     public static double[] actionsPR(ArrayList<Double> qValues, double τ) {
-        double sum = qValues.stream()
-                .mapToDouble(q -> Math.exp(q / τ))
-                .sum();
-
-        return IntStream
-                .iterate(0, i -> ++i)
-                .limit(qValues.size())
-                .mapToDouble(i -> Math.exp(qValues.get(i) / τ) / sum)
+        double[] q = qValues.stream()
+                .mapToDouble(Double::doubleValue)
                 .toArray();
+
+        return actionsPR(q, τ, new double[q.length]);
+    }
+
+    /**
+     * Boltzmann probabilities softmax(q/τ) written into probs. The largest Q
+     * is subtracted before exponentiating, so small τ cannot overflow.
+     */
+    public static double[] actionsPR(double[] qValues, double τ, double[] probs) {
+        double sum = boltzmannWeights(qValues, τ, probs);
+
+        for (int i = 0; i < qValues.length; i++)
+            probs[i] /= sum;
+        return probs;
+    }
+
+    /**
+     * Samples an action from softmax(q/τ). probs is scratch space that ends up
+     * holding the action probabilities.
+     *
+     * @return the sampled action index.
+     */
+    public static int boltzmann(double[] qValues, double τ, double[] probs, Random rnd) {
+        double sum = boltzmannWeights(qValues, τ, probs);
+        double u = rnd.nextDouble() * sum;
+
+        int action = -1;
+        for (int i = 0; i < qValues.length; i++) {
+            u -= probs[i];
+            probs[i] /= sum;
+            if (u < 0 && action < 0)
+                action = i;
+        }
+        return action < 0 ? qValues.length - 1 : action;
+    }
+
+    /**
+     * With probability ε a uniformly random action, otherwise the greedy one.
+     */
+    public static int epsilonGreedy(double[] qValues, double ε, Random rnd) {
+        if (rnd.nextDouble() < ε)
+            return rnd.nextInt(qValues.length);
+        return argmax(qValues);
+    }
+
+    public static int argmax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++)
+            if (values[i] > values[best])
+                best = i;
+        return best;
+    }
+
+    // Unnormalized exp((q - max q) / τ) into weights, returns their sum.
+    private static double boltzmannWeights(double[] qValues, double τ, double[] weights) {
+        if (qValues.length == 0 || weights.length < qValues.length)
+            throw new IllegalArgumentException("Illegal size: " + qValues.length);
+
+        double max = qValues[argmax(qValues)];
+
+        double sum = 0;
+        for (int i = 0; i < qValues.length; i++) {
+            weights[i] = Math.exp((qValues[i] - max) / τ);
+            sum += weights[i];
+        }
+        return sum;
     }
 
     public static double relu(double x) {
@@ -34,4 +132,87 @@ public class Functions {
     public static double reluPrime(double x) {
         return x > 0 ? 1 : 0;
     }
+
+    /**
+     * In place ReLU over a whole matrix, X = max(0, X). Works directly on the
+     * flat storage, one {@link Kernels#relu} call per row.
+     */
+    public static Matrix reluEquals(Matrix X) {
+        double[] a = X.getFlatArray();
+        int m = X.getRowDimension(), n = X.getColumnDimension();
+        for (int i = 0; i < m; i++)
+            Kernels.relu(a, X.getOffset() + i * X.getStride(), n);
+        return X;
+    }
+
+    /**
+     * Element-wise ReLU derivative of X written into dst, which may be X
+     * itself.
+     */
+    public static Matrix reluPrime(Matrix X, Matrix dst) {
+        int m = X.getRowDimension(), n = X.getColumnDimension();
+        if (dst.getRowDimension() != m || dst.getColumnDimension() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        double[] a = X.getFlatArray(), c = dst.getFlatArray();
+        for (int i = 0; i < m; i++) {
+            int ai = X.getOffset() + i * X.getStride();
+            int ci = dst.getOffset() + i * dst.getStride();
+            for (int j = 0; j < n; j++)
+                c[ci + j] = a[ai + j] > 0 ? 1 : 0;
+        }
+        return dst;
+    }
+
+    /**
+     * Backpropagates through a ReLU in place, delta = delta .* relu'(a). The
+     * derivative is read from the post-activation a, since a > 0 exactly
+     * where the pre-activation is.
+     */
+    public static Matrix reluPrimeTimesEquals(Matrix delta, Matrix a) {
+        int m = delta.getRowDimension(), n = delta.getColumnDimension();
+        if (a.getRowDimension() != m || a.getColumnDimension() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        double[] d = delta.getFlatArray(), x = a.getFlatArray();
+        for (int i = 0; i < m; i++) {
+            int di = delta.getOffset() + i * delta.getStride();
+            int xi = a.getOffset() + i * a.getStride();
+            for (int j = 0; j < n; j++)
+                d[di + j] = x[xi + j] > 0 ? d[di + j] : 0;
+        }
+        return delta;
+    }
+
+    /**
+     * Single-precision {@link #reluEquals(Matrix)}.
+     */
+    public static FloatMatrix reluEquals(FloatMatrix X) {
+        float[] a = X.getFlatArray();
+        int m = X.getRowDimension(), n = X.getColumnDimension();
+        for (int i = 0; i < m; i++) {
+            int from = X.getOffset() + i * X.getStride();
+            for (int j = from; j < from + n; j++)
+                a[j] = Math.max(0, a[j]);
+        }
+        return X;
+    }
+
+    /**
+     * Single-precision {@link #reluPrimeTimesEquals(Matrix, Matrix)}.
+     */
+    public static FloatMatrix reluPrimeTimesEquals(FloatMatrix delta, FloatMatrix a) {
+        int m = delta.getRowDimension(), n = delta.getColumnDimension();
+        if (a.getRowDimension() != m || a.getColumnDimension() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        float[] d = delta.getFlatArray(), x = a.getFlatArray();
+        for (int i = 0; i < m; i++) {
+            int di = delta.getOffset() + i * delta.getStride();
+            int xi = a.getOffset() + i * a.getStride();
+            for (int j = 0; j < n; j++)
+                d[di + j] = x[xi + j] > 0 ? d[di + j] : 0;
+        }
+        return delta;
+    }
 }
@@ -0,0 +1,67 @@
+package com.marquee.ai;
+
+import java.util.*;
+
+/**
+ * Draws random slot indices for the replay memories into caller buffers.
+ * Sampling without replacement uses Floyd's algorithm with a stamp array
+ * for membership, so both modes are O(count) and allocation free no matter
+ * how full the memory is.
+ */
+public class IndexSampler {
+
+    private final Random rnd;
+
+    // stamps[i] == generation iff i was already drawn in the current call.
+    private final int[] stamps;
+    private int generation;
+
+    public IndexSampler(int capacity, Random rnd) {
+        this.rnd = rnd;
+        this.stamps = new int[capacity];
+        this.generation = 0;
+    }
+
+    /**
+     * Writes count indices drawn uniformly from [0, n) into out.
+     */
+    public int[] withReplacement(int n, int[] out, int count) throws IllegalArgumentException {
+        checkArguments(n, out, count);
+        if (n == 0 && count > 0)
+            throw new IllegalArgumentException("Illegal size: " + count);
+
+        for (int i = 0; i < count; i++)
+            out[i] = this.rnd.nextInt(n);
+        return out;
+    }
+
+    /**
+     * Writes count distinct indices drawn uniformly from [0, n) into out.
+     */
+    public int[] withoutReplacement(int n, int[] out, int count) throws IllegalArgumentException {
+        checkArguments(n, out, count);
+        if (count > n)
+            throw new IllegalArgumentException("Illegal size: " + count);
+
+        if (++this.generation == 0) {
+            Arrays.fill(this.stamps, 0);
+            this.generation = 1;
+        }
+
+        for (int i = 0, j = n - count; j < n; i++, j++) {
+            int t = this.rnd.nextInt(j + 1);
+            if (this.stamps[t] == this.generation)
+                t = j;
+            this.stamps[t] = this.generation;
+            out[i] = t;
+        }
+        return out;
+    }
+
+    private void checkArguments(int n, int[] out, int count) {
+        if (n < 0 || n > this.stamps.length)
+            throw new IllegalArgumentException("Illegal range: " + n);
+        if (count < 0 || count > out.length)
+            throw new IllegalArgumentException("Illegal size: " + count);
+    }
+}
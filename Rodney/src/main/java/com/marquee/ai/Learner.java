@@ -0,0 +1,216 @@
+package com.marquee.ai;
+
+import com.marquee.ai.nn.*;
+import jama.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Trains a Q-network on a background thread while the robot thread keeps
+ * acting. The actor pushes transitions and reads its policy through
+ * {@link #policy()}; the learner samples the replay memory, trains its own
+ * copy of the network and publishes the weights every publishInterval steps.
+ *
+ * Weights are exchanged through three buffers: one owned by the actor, one by
+ * the learner and a spare swapped between them with a single atomic
+ * getAndSet, so neither side ever waits for the other or sees half-written
+ * weights.
+ */
+public class Learner implements Runnable {
+
+    private static final int INDEX = 0b11;
+    private static final int FRESH = 0b100;
+    private static final long WAIT_NANOS = 1_000_000;
+
+    private final NNetwork network;
+    private final NNetwork[] buffers;
+    private final AtomicInteger spare;
+    private int actorBuffer;
+    private int learnerBuffer;
+
+    private final ArrayReplayMemory memory;
+    private final Optimizer optimizer;
+    private final Batch batch;
+    private final double γ;
+    private final double τ;
+    private final int publishInterval;
+
+    private final double[] maxNextQ;
+    private final double[] qValues;
+    private final double[] grad;
+    private final double[] absδ;
+    private final Matrix outputGrad;
+    private volatile double loss;
+
+    private volatile boolean running;
+    private volatile long steps;
+    private Thread thread;
+
+    public Learner(NNetwork network, ArrayReplayMemory memory, Optimizer optimizer,
+            int batchSize, double γ, int publishInterval) {
+        this(network, memory, optimizer, batchSize, γ, 1, publishInterval);
+    }
+
+    /**
+     * @param τ Polyak rate of the target network after each step, 1 bootstraps
+     * from the online weights.
+     */
+    public Learner(NNetwork network, ArrayReplayMemory memory, Optimizer optimizer,
+            int batchSize, double γ, double τ, int publishInterval) {
+        if (memory.getStateSize() != network.getInputSize())
+            throw new IllegalArgumentException("State sizes must agree.");
+
+        this.network = network;
+        this.buffers = new NNetwork[]{new NNetwork(network), new NNetwork(network), new NNetwork(network)};
+        this.actorBuffer = 0;
+        this.learnerBuffer = 1;
+        this.spare = new AtomicInteger(2);
+
+        this.memory = memory;
+        this.optimizer = optimizer;
+        this.batch = new Batch(batchSize, network.getInputSize());
+        this.γ = γ;
+        this.τ = τ;
+        this.publishInterval = publishInterval;
+
+        this.maxNextQ = new double[batchSize];
+        this.qValues = new double[batchSize];
+        this.grad = new double[batchSize];
+        this.absδ = new double[batchSize];
+        this.outputGrad = new Matrix(batchSize, network.getOutputSize());
+
+        this.network.syncTarget();
+    }
+
+    /**
+     * Stores a transition from the actor. The memory lock is only ever held
+     * for a copy, never across a training step.
+     */
+    public void push(double[] state, int action, double reward, double[] nextState, boolean done) {
+        synchronized (this.memory) {
+            this.memory.push(state, action, reward, nextState, done);
+        }
+    }
+
+    /**
+     * The actor's network, switched to the most recently published weights if
+     * there are new ones. Must only be called from the actor thread.
+     */
+    public NNetwork policy() {
+        if ((this.spare.get() & FRESH) != 0)
+            this.actorBuffer = this.spare.getAndSet(this.actorBuffer) & INDEX;
+        return this.buffers[this.actorBuffer];
+    }
+
+    /**
+     * Starts the learner thread unless it is already running. Robocode stops
+     * a robot's threads at the end of every round, so this is called again at
+     * the start of the next one.
+     */
+    public synchronized void start() {
+        if (this.thread != null && this.thread.isAlive())
+            return;
+
+        this.running = true;
+        this.thread = new Thread(this, "learner");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (this.thread == null)
+            return;
+
+        this.running = false;
+        this.thread.interrupt();
+        this.thread.join();
+        this.thread = null;
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            int len;
+            synchronized (this.memory) {
+                len = this.memory.len();
+            }
+
+            // Until a batch is available, wait a tick's worth instead of
+            // spinning; stop() interrupts, which unparks immediately.
+            if (len < this.batch.size()) {
+                LockSupport.parkNanos(WAIT_NANOS);
+                continue;
+            }
+
+            trainStep();
+
+            if (++this.steps % this.publishInterval == 0)
+                publish();
+        }
+    }
+
+    /**
+     * One Q-learning step on a sampled minibatch, with the Huber loss on the
+     * TD error δ = Q(s,a) - (r + γ max Q'(s',·)), Q' being the target network.
+     * With a {@link PrioritizedReplayMemory} the loss is importance weighted
+     * and the sampled slots get |δ| as their new priorities.
+     */
+    public void trainStep() {
+        synchronized (this.memory) {
+            this.memory.sample(this.batch);
+        }
+
+        int n = this.batch.size();
+        int[] actions = this.batch.getActions();
+
+        Matrix next = this.network.fowardTarget(this.batch.getNextStates());
+        for (int i = 0; i < n; i++) {
+            double max = next.get(i, 0);
+            for (int j = 1; j < next.getColumnDimension(); j++)
+                max = Math.max(max, next.get(i, j));
+            this.maxNextQ[i] = max;
+        }
+
+        Matrix q = this.network.fowardBatch(this.batch.getStates());
+        for (int i = 0; i < n; i++)
+            this.qValues[i] = q.get(i, actions[i]);
+
+        // The weights are all 1 unless the memory is prioritized.
+        this.loss = Functions.huberLoss(this.qValues, this.maxNextQ, this.batch.getRewards(),
+                this.batch.getDones(), this.γ, this.batch.getWeights(), this.grad, this.absδ, n);
+
+        if (this.memory instanceof PrioritizedReplayMemory) {
+            synchronized (this.memory) {
+                ((PrioritizedReplayMemory) this.memory).updatePriorities(this.batch.getIndices(), this.absδ, n);
+            }
+        }
+
+        Arrays.fill(this.outputGrad.getFlatArray(), 0);
+        for (int i = 0; i < n; i++)
+            this.outputGrad.set(i, actions[i], this.grad[i]);
+
+        this.network.backward(this.outputGrad);
+        this.network.step(this.optimizer);
+        this.network.softUpdateTarget(this.τ);
+    }
+
+    /**
+     * Copies the learner's weights into its buffer and hands it to the actor.
+     */
+    public void publish() {
+        this.buffers[this.learnerBuffer].copyWeightsFrom(this.network);
+        this.learnerBuffer = this.spare.getAndSet(this.learnerBuffer | FRESH) & INDEX;
+    }
+
+    /**
+     * Loss of the most recent training step.
+     */
+    public double getLoss() {
+        return this.loss;
+    }
+
+    public long getSteps() {
+        return this.steps;
+    }
+}
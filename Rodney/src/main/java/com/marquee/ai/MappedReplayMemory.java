@@ -0,0 +1,217 @@
+package com.marquee.ai;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Replay memory backed by a memory-mapped file, so experience survives the
+ * robot being re-created between rounds and battles and is not limited by
+ * the heap. The file is a little-endian header followed by fixed-size
+ * records:
+ *
+ * <pre>
+ * header: magic i32 | version i32 | capacity i32 | stateSize i32 | position i32 | size i32 | 8 spare bytes
+ * record: state f64[stateSize] | nextState f64[stateSize] | reward f64 | action i32 | done i32
+ * </pre>
+ *
+ * The records are mapped in segments of at most 1GB, since a single mapping
+ * cannot exceed 2GB.
+ *
+ * Robocode's sandbox only lets a robot write through a
+ * RobocodeFileOutputStream counted against its data quota, so a robot
+ * cannot map this file. It is filled outside the sandbox by
+ * com.marquee.runner.BattleRunner; Rodney itself carries experience from
+ * battle to battle with a {@link ReplaySnapshot}.
+ */
+public class MappedReplayMemory implements Closeable {
+
+    private static final int MAGIC = 0x50524452; // "RDRP" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int POSITION_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private int position;
+    private int size;
+    private final int capacity;
+    private final int stateSize;
+
+    private final int recordSize;
+    private final int recordsPerSegment;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+
+    private final IndexSampler sampler;
+
+    /**
+     * Opens the memory stored in file, creating it if needed. An existing file
+     * must have been created with the same capacity and state size.
+     */
+    public MappedReplayMemory(File file, int capacity, int stateSize, long seed) throws IOException {
+        if (capacity <= 0 || stateSize <= 0)
+            throw new IllegalArgumentException("Illegal size: " + capacity + "x" + stateSize);
+
+        this.capacity = capacity;
+        this.stateSize = stateSize;
+        this.recordSize = 16 * stateSize + 16;
+        this.recordsPerSegment = (int) Math.max(1, SEGMENT_SIZE / this.recordSize);
+        this.sampler = new IndexSampler(capacity, new Random(seed));
+
+        boolean exists = file.exists() && file.length() > 0;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            this.header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (exists) {
+                if (this.header.getInt(0) != MAGIC || this.header.getInt(4) != VERSION)
+                    throw new IOException("Not a replay memory file: " + file);
+                if (this.header.getInt(8) != capacity || this.header.getInt(12) != stateSize)
+                    throw new IOException("Replay memory file has a different shape: " + file);
+
+                this.position = this.header.getInt(POSITION_OFFSET);
+                this.size = this.header.getInt(SIZE_OFFSET);
+                if (this.position < 0 || this.position >= capacity || this.size < 0 || this.size > capacity)
+                    throw new IOException("Corrupt replay memory header, position " + this.position
+                            + " size " + this.size + ": " + file);
+            } else {
+                this.header.putInt(0, MAGIC)
+                        .putInt(4, VERSION)
+                        .putInt(8, capacity)
+                        .putInt(12, stateSize)
+                        .putInt(POSITION_OFFSET, 0)
+                        .putInt(SIZE_OFFSET, 0);
+                this.position = 0;
+                this.size = 0;
+            }
+
+            int segmentCount = (capacity + this.recordsPerSegment - 1) / this.recordsPerSegment;
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                int records = Math.min(this.recordsPerSegment, capacity - s * this.recordsPerSegment);
+                long start = HEADER_SIZE + (long) s * this.recordsPerSegment * this.recordSize;
+                this.segments[s] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, (long) records * this.recordSize);
+                this.segments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a transition straight into the mapping, overwriting the oldest
+     * one once full.
+     *
+     * @return the slot the transition was written to.
+     */
+    public int push(double[] state, int action, double reward, double[] nextState, boolean done) {
+        if (state.length != this.stateSize || nextState.length != this.stateSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        int slot = this.position;
+        ByteBuffer segment = this.segments[slot / this.recordsPerSegment];
+        int at = (slot % this.recordsPerSegment) * this.recordSize;
+
+        for (int i = 0; i < this.stateSize; i++, at += 8)
+            segment.putDouble(at, state[i]);
+        for (int i = 0; i < this.stateSize; i++, at += 8)
+            segment.putDouble(at, nextState[i]);
+        segment.putDouble(at, reward);
+        segment.putInt(at + 8, action);
+        segment.putInt(at + 12, done ? 1 : 0);
+
+        if (this.size < this.capacity)
+            this.size++;
+
+        this.position = ++this.position % this.capacity;
+
+        this.header.putInt(POSITION_OFFSET, this.position);
+        this.header.putInt(SIZE_OFFSET, this.size);
+        return slot;
+    }
+
+    /**
+     * Fills the batch with distinct uniformly drawn transitions.
+     */
+    public Batch sample(Batch batch) throws IllegalArgumentException {
+        return sample(batch, false);
+    }
+
+    /**
+     * Fills the batch with uniformly drawn transitions, with or without
+     * replacement.
+     */
+    public Batch sample(Batch batch, boolean replacement) throws IllegalArgumentException {
+        if (batch.getStateSize() != this.stateSize)
+            throw new IllegalArgumentException("Illegal state size: " + batch.getStateSize());
+
+        if (replacement)
+            this.sampler.withReplacement(this.size, batch.getIndices(), batch.size());
+        else
+            this.sampler.withoutReplacement(this.size, batch.getIndices(), batch.size());
+
+        return gather(batch);
+    }
+
+    /**
+     * Reads the transitions at batch.getIndices() from the mapping into the
+     * batch arrays and resets their importance-sampling weights to 1.
+     */
+    public Batch gather(Batch batch) {
+        int[] indices = batch.getIndices();
+        double[] s = batch.getStates().getFlatArray();
+        double[] ns = batch.getNextStates().getFlatArray();
+
+        for (int b = 0; b < batch.size(); b++) {
+            int slot = indices[b];
+            ByteBuffer segment = this.segments[slot / this.recordsPerSegment];
+            int at = (slot % this.recordsPerSegment) * this.recordSize;
+
+            for (int i = 0; i < this.stateSize; i++, at += 8)
+                s[b * this.stateSize + i] = segment.getDouble(at);
+            for (int i = 0; i < this.stateSize; i++, at += 8)
+                ns[b * this.stateSize + i] = segment.getDouble(at);
+            batch.getRewards()[b] = segment.getDouble(at);
+            batch.getActions()[b] = segment.getInt(at + 8);
+            batch.getDones()[b] = segment.getInt(at + 12) != 0;
+            batch.getWeights()[b] = 1;
+        }
+        return batch;
+    }
+
+    /**
+     * Flushes the mapped records and header to disk.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : this.segments)
+            segment.force();
+        this.header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        this.channel.close();
+    }
+
+    public int len() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getStateSize() {
+        return this.stateSize;
+    }
+}
@@ -0,0 +1,166 @@
+package com.marquee.ai;
+
+import java.util.*;
+
+/**
+ * Proportional prioritized experience replay (Schaul et al., 2015). Slot
+ * priorities live in flat-array sum and min trees, so push, sample and
+ * priority updates are O(log n) per transition.
+ *
+ * Every sample method draws by priority and fills the batch's
+ * importance-sampling weights, so the memory can be used wherever an
+ * {@link ArrayReplayMemory} is expected. Callers feed the TD errors back
+ * through {@link #updatePriorities(int[], double[], int)}.
+ */
+public class PrioritizedReplayMemory extends ArrayReplayMemory {
+
+    private static final double ε = 1e-6;
+
+    private final double α;
+    private double β;
+    private double maxPriority;
+
+    // Binary trees over the slots, node i has children 2i and 2i+1 and the
+    // leaves start at treeCapacity.
+    private final int treeCapacity;
+    private final double[] sumTree;
+    private final double[] minTree;
+
+    private final Random rnd;
+
+    public PrioritizedReplayMemory(int capacity, int stateSize, double α, long seed) throws IllegalArgumentException {
+        super(capacity, stateSize, seed);
+
+        int treeCapacity = 1;
+        while (treeCapacity < capacity)
+            treeCapacity <<= 1;
+
+        this.treeCapacity = treeCapacity;
+        this.sumTree = new double[2 * treeCapacity];
+        this.minTree = new double[2 * treeCapacity];
+        Arrays.fill(this.minTree, Double.POSITIVE_INFINITY);
+
+        this.α = α;
+        this.β = 0.4;
+        this.maxPriority = 1;
+        this.rnd = new Random(seed ^ 0x5DEECE66DL);
+    }
+
+    /**
+     * Stores a transition with the highest priority seen so far, so it is
+     * replayed at least once soon.
+     */
+    @Override
+    public int push(double[] state, int action, double reward, double[] nextState, boolean done) {
+        int slot = super.push(state, action, reward, nextState, done);
+        setPriority(slot, Math.pow(this.maxPriority, this.α));
+        return slot;
+    }
+
+    /**
+     * Fills the batch by priority, with the current importance-sampling
+     * exponent.
+     */
+    @Override
+    public Batch sample(Batch batch) throws IllegalArgumentException {
+        return sample(batch, this.β);
+    }
+
+    /**
+     * Fills the batch by priority, with the current importance-sampling
+     * exponent. Proportional draws may repeat a transition, so replacement
+     * is ignored.
+     */
+    @Override
+    public Batch sample(Batch batch, boolean replacement) throws IllegalArgumentException {
+        return sample(batch, this.β);
+    }
+
+    /**
+     * Fills the batch with transitions drawn proportionally to their priority,
+     * one from each of batch.size() equal segments of the total priority.
+     *
+     * @param β importance-sampling exponent, 1 fully compensates the bias.
+     */
+    public Batch sample(Batch batch, double β) throws IllegalArgumentException {
+        if (batch.getStateSize() != getStateSize())
+            throw new IllegalArgumentException("Illegal state size: " + batch.getStateSize());
+
+        int len = len();
+        if (batch.size() > 0 && len == 0)
+            throw new IllegalArgumentException("Illegal size: " + batch.size());
+
+        int[] indices = batch.getIndices();
+        double[] weights = batch.getWeights();
+        double total = this.sumTree[1];
+        double segment = total / batch.size();
+        double maxWeight = Math.pow(len * this.minTree[1] / total, -β);
+
+        for (int i = 0; i < batch.size(); i++)
+            indices[i] = Math.min(find((i + this.rnd.nextDouble()) * segment), len - 1);
+
+        // gather resets the weights, so they are filled in after it.
+        gather(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            double p = this.sumTree[this.treeCapacity + indices[i]] / total;
+            weights[i] = Math.pow(len * p, -β) / maxWeight;
+        }
+        return batch;
+    }
+
+    /**
+     * Sets the priorities of the given slots from their TD errors,
+     * (|δ| + ε)^α.
+     *
+     * @exception IllegalArgumentException a slot holds no transition.
+     */
+    public void updatePriorities(int[] indices, double[] tdErrors, int count) throws IllegalArgumentException {
+        for (int i = 0; i < count; i++) {
+            if (indices[i] < 0 || indices[i] >= len())
+                throw new IllegalArgumentException("Illegal index: " + indices[i]);
+
+            double priority = Math.abs(tdErrors[i]) + ε;
+            if (priority > this.maxPriority)
+                this.maxPriority = priority;
+            setPriority(indices[i], Math.pow(priority, this.α));
+        }
+    }
+
+    /**
+     * Sets the importance-sampling exponent used by {@link #sample(Batch)},
+     * usually annealed from about 0.4 towards 1 over training.
+     */
+    public void setβ(double β) {
+        this.β = β;
+    }
+
+    public double getβ() {
+        return this.β;
+    }
+
+    private void setPriority(int slot, double p) {
+        int node = this.treeCapacity + slot;
+        this.sumTree[node] = p;
+        this.minTree[node] = p;
+
+        for (node >>= 1; node >= 1; node >>= 1) {
+            this.sumTree[node] = this.sumTree[2 * node] + this.sumTree[2 * node + 1];
+            this.minTree[node] = Math.min(this.minTree[2 * node], this.minTree[2 * node + 1]);
+        }
+    }
+
+    // Leaf whose prefix-sum interval contains u.
+    private int find(double u) {
+        int node = 1;
+        while (node < this.treeCapacity) {
+            int left = 2 * node;
+            if (u < this.sumTree[left] || this.sumTree[left + 1] == 0)
+                node = left;
+            else {
+                u -= this.sumTree[left];
+                node = left + 1;
+            }
+        }
+        return node - this.treeCapacity;
+    }
+}
@@ -1,7 +1,6 @@
 package com.marquee.ai;
 
 import java.util.*;
-import java.util.stream.*;
 
 public class ReplayMemory {
 
@@ -10,11 +9,13 @@ public class ReplayMemory {
 
     private final ArrayList<Transition> transitions;
 
-    private final Random rnd;
+    private final IndexSampler sampler;
+    private int[] indices;
 
     public ReplayMemory(int capacity, long seed) throws IllegalArgumentException {
-        this.transitions = new ArrayList(capacity);
-        this.rnd = new Random(seed);
+        this.transitions = new ArrayList<>(capacity);
+        this.sampler = new IndexSampler(capacity, new Random(seed));
+        this.indices = new int[0];
         this.capacity = capacity;
         this.position = 0;
     }
@@ -29,15 +30,45 @@ public class ReplayMemory {
     }
 
     public ArrayList<Transition> sample(int batchSize) throws IllegalArgumentException {
-        if (batchSize < 0 || batchSize > this.capacity)
+        if (batchSize < 0 || batchSize > this.transitions.size())
             throw new IllegalArgumentException("Illegal size: " + batchSize);
 
-        return IntStream
-                .generate(() -> this.rnd.nextInt(this.transitions.size()))
-                .distinct()
-                .limit(batchSize)
-                .mapToObj(this.transitions::get)
-                .collect(Collectors.toCollection(ArrayList::new));
+        if (this.indices.length < batchSize)
+            this.indices = new int[batchSize];
+
+        this.sampler.withoutReplacement(this.transitions.size(), this.indices, batchSize);
+
+        ArrayList<Transition> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++)
+            batch.add(this.transitions.get(this.indices[i]));
+        return batch;
+    }
+
+    /**
+     * Fills the first batchSize entries of out with sampled transitions,
+     * without allocating.
+     */
+    public Transition[] sample(Transition[] out, int batchSize, boolean replacement) throws IllegalArgumentException {
+        if (batchSize > out.length)
+            throw new IllegalArgumentException("Illegal size: " + batchSize);
+
+        if (this.indices.length < batchSize)
+            this.indices = new int[Math.max(batchSize, out.length)];
+
+        sampleIndices(this.indices, batchSize, replacement);
+
+        for (int i = 0; i < batchSize; i++)
+            out[i] = this.transitions.get(this.indices[i]);
+        return out;
+    }
+
+    /**
+     * Writes batchSize indices of stored transitions into out.
+     */
+    public int[] sampleIndices(int[] out, int batchSize, boolean replacement) throws IllegalArgumentException {
+        if (replacement)
+            return this.sampler.withReplacement(this.transitions.size(), out, batchSize);
+        return this.sampler.withoutReplacement(this.transitions.size(), out, batchSize);
     }
 
     public int len() {
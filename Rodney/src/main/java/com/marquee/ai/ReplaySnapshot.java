@@ -0,0 +1,103 @@
+package com.marquee.ai;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * Compact snapshot of the most recent transitions of an
+ * {@link ArrayReplayMemory}, small enough for a robot's data quota, so
+ * experience survives from one battle to the next. Robots cannot map files,
+ * so the snapshot is written and read through plain streams. States and
+ * rewards are stored as float32 and the records are deflated:
+ *
+ * <pre>
+ * magic "RDSN" i32 | version u16 | stateSize i32 | count i32 | deflated records
+ * record: state f32[stateSize] | nextState f32[stateSize] | reward f32 | action u8 | done u8
+ * </pre>
+ */
+public class ReplaySnapshot {
+
+    private static final int MAGIC = 0x5244534E; // "RDSN"
+    private static final short VERSION = 1;
+
+    private ReplaySnapshot() {
+    }
+
+    /**
+     * Writes at most count of the most recent transitions, oldest first, so
+     * reading them back preserves their order in the ring.
+     *
+     * @return the number of transitions written.
+     */
+    public static int save(ArrayReplayMemory memory, OutputStream out, int count) throws IOException {
+        int stateSize = memory.getStateSize();
+        int n = Math.min(count, memory.len());
+
+        Batch batch = new Batch(n, stateSize);
+        int[] indices = batch.getIndices();
+        for (int i = 0; i < n; i++)
+            indices[i] = Math.floorMod(memory.getPosition() - n + i, memory.getCapacity());
+        memory.gather(batch);
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeInt(stateSize);
+        header.writeInt(n);
+        header.flush();
+
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflater));
+        double[] s = batch.getStates().getFlatArray(), ns = batch.getNextStates().getFlatArray();
+        for (int i = 0; i < n; i++) {
+            int action = batch.getActions()[i];
+            if (action < 0 || action > 255)
+                throw new IllegalArgumentException("Illegal action: " + action);
+
+            for (int k = i * stateSize; k < (i + 1) * stateSize; k++)
+                data.writeFloat((float) s[k]);
+            for (int k = i * stateSize; k < (i + 1) * stateSize; k++)
+                data.writeFloat((float) ns[k]);
+            data.writeFloat((float) batch.getRewards()[i]);
+            data.writeByte(action);
+            data.writeBoolean(batch.getDones()[i]);
+        }
+        data.flush();
+        deflater.finish();
+        out.flush();
+        return n;
+    }
+
+    /**
+     * Pushes the transitions of a snapshot into memory, oldest first.
+     *
+     * @return the number of transitions read.
+     */
+    public static int load(ArrayReplayMemory memory, InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a replay snapshot.");
+        short version = header.readShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported replay snapshot version: " + version);
+
+        int stateSize = header.readInt(), n = header.readInt();
+        if (stateSize != memory.getStateSize())
+            throw new IOException("Replay snapshot has a different state size: " + stateSize);
+        if (n < 0)
+            throw new IOException("Corrupt replay snapshot, count " + n);
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+        double[] state = new double[stateSize], nextState = new double[stateSize];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < stateSize; k++)
+                state[k] = data.readFloat();
+            for (int k = 0; k < stateSize; k++)
+                nextState[k] = data.readFloat();
+            double reward = data.readFloat();
+            int action = data.readUnsignedByte();
+            memory.push(state, action, reward, nextState, data.readBoolean());
+        }
+        return n;
+    }
+}
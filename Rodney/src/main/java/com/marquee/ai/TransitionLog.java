@@ -0,0 +1,115 @@
+package com.marquee.ai;
+
+import java.io.*;
+
+/**
+ * Append-only binary stream of transitions, used to move experience out of a
+ * sandboxed robot (through its data directory) and between processes. The
+ * stream is a sequence of tagged entries, so logs can simply be
+ * concatenated:
+ *
+ * <pre>
+ * 'H' stateSize i32                                        header
+ * 'T' state f64[] | action i32 | reward f64 | nextState f64[] | done u8
+ * 'B'                                                      battle completed
+ * </pre>
+ */
+public class TransitionLog {
+
+    private static final int HEADER = 'H';
+    private static final int TRANSITION = 'T';
+    private static final int BATTLE = 'B';
+
+    public interface Sink {
+
+        void push(double[] state, int action, double reward, double[] nextState, boolean done);
+
+        default void battleCompleted() {
+        }
+    }
+
+    public static class Writer implements Closeable, Flushable {
+
+        private final DataOutputStream out;
+        private final int stateSize;
+
+        public Writer(OutputStream out, int stateSize) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.stateSize = stateSize;
+            this.out.writeByte(HEADER);
+            this.out.writeInt(stateSize);
+        }
+
+        public void write(double[] state, int action, double reward, double[] nextState, boolean done) throws IOException {
+            if (state.length != this.stateSize || nextState.length != this.stateSize)
+                throw new IllegalArgumentException("Array dimensions must agree.");
+
+            this.out.writeByte(TRANSITION);
+            for (double s : state)
+                this.out.writeDouble(s);
+            this.out.writeInt(action);
+            this.out.writeDouble(reward);
+            for (double s : nextState)
+                this.out.writeDouble(s);
+            this.out.writeBoolean(done);
+        }
+
+        public void battleCompleted() throws IOException {
+            this.out.writeByte(BATTLE);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    private TransitionLog() {
+    }
+
+    /**
+     * Reads entries until the end of the stream, passing them to sink.
+     *
+     * @return the number of transitions read.
+     */
+    public static long read(InputStream in, Sink sink) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        double[] state = null, nextState = null;
+        long count = 0;
+
+        for (int tag; (tag = data.read()) >= 0;) {
+            switch (tag) {
+                case HEADER:
+                    int stateSize = data.readInt();
+                    if (state == null || state.length != stateSize) {
+                        state = new double[stateSize];
+                        nextState = new double[stateSize];
+                    }
+                    break;
+                case TRANSITION:
+                    if (state == null)
+                        throw new IOException("Transition before header.");
+                    for (int i = 0; i < state.length; i++)
+                        state[i] = data.readDouble();
+                    int action = data.readInt();
+                    double reward = data.readDouble();
+                    for (int i = 0; i < nextState.length; i++)
+                        nextState[i] = data.readDouble();
+                    sink.push(state, action, reward, nextState, data.readBoolean());
+                    count++;
+                    break;
+                case BATTLE:
+                    sink.battleCompleted();
+                    break;
+                default:
+                    throw new IOException("Corrupt transition log, tag " + tag);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,16 @@
+package com.marquee.ai.nn;
+
+/**
+ * Activation applied by a {@link Dense} layer to its output.
+ */
+public enum Activation {
+    /**
+     * max(0, x), used on the hidden layers.
+     */
+    RELU,
+    /**
+     * x unchanged, for outputs that must be able to go negative such as
+     * Q-values.
+     */
+    IDENTITY
+}
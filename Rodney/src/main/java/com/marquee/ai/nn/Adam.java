@@ -0,0 +1,109 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+
+/**
+ * Adam (Kingma & Ba, 2014) with bias-corrected first and second moment
+ * estimates.
+ */
+public class Adam implements Optimizer {
+
+    private final double learningRate;
+    private final double β1;
+    private final double β2;
+    private final double ε;
+
+    private double[][] moment1;
+    private double[][] moment2;
+    private int t;
+
+    private float[][] floatMoment1;
+    private float[][] floatMoment2;
+    private int floatT;
+
+    public Adam(double learningRate) {
+        this(learningRate, 0.9, 0.999, 1e-8);
+    }
+
+    public Adam(double learningRate, double β1, double β2, double ε) {
+        this.learningRate = learningRate;
+        this.β1 = β1;
+        this.β2 = β2;
+        this.ε = ε;
+        this.t = 0;
+        this.floatT = 0;
+    }
+
+    @Override
+    public void step(Matrix[] weights, Matrix[] gradients) {
+        if (this.moment1 == null) {
+            this.moment1 = new double[weights.length][];
+            this.moment2 = new double[weights.length][];
+            for (int l = 0; l < weights.length; l++) {
+                int size = weights[l].getRowDimension() * weights[l].getColumnDimension();
+                this.moment1[l] = new double[size];
+                this.moment2[l] = new double[size];
+            }
+        }
+
+        this.t++;
+        double stepSize = this.learningRate
+                * Math.sqrt(1 - Math.pow(this.β2, this.t)) / (1 - Math.pow(this.β1, this.t));
+
+        for (int l = 0; l < weights.length; l++) {
+            Matrix W = weights[l], G = gradients[l];
+            double[] w = W.getFlatArray(), g = G.getFlatArray();
+            double[] m1 = this.moment1[l], m2 = this.moment2[l];
+            int m = W.getRowDimension(), n = W.getColumnDimension();
+
+            for (int i = 0; i < m; i++) {
+                int wi = W.getOffset() + i * W.getStride();
+                int gi = G.getOffset() + i * G.getStride();
+                int mi = i * n;
+                for (int j = 0; j < n; j++) {
+                    double gij = g[gi + j];
+                    m1[mi + j] = this.β1 * m1[mi + j] + (1 - this.β1) * gij;
+                    m2[mi + j] = this.β2 * m2[mi + j] + (1 - this.β2) * gij * gij;
+                    w[wi + j] -= stepSize * m1[mi + j] / (Math.sqrt(m2[mi + j]) + this.ε);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void step(FloatMatrix[] weights, FloatMatrix[] gradients) {
+        if (this.floatMoment1 == null) {
+            this.floatMoment1 = new float[weights.length][];
+            this.floatMoment2 = new float[weights.length][];
+            for (int l = 0; l < weights.length; l++) {
+                int size = weights[l].getRowDimension() * weights[l].getColumnDimension();
+                this.floatMoment1[l] = new float[size];
+                this.floatMoment2[l] = new float[size];
+            }
+        }
+
+        this.floatT++;
+        float stepSize = (float) (this.learningRate
+                * Math.sqrt(1 - Math.pow(this.β2, this.floatT)) / (1 - Math.pow(this.β1, this.floatT)));
+        float β1 = (float) this.β1, β2 = (float) this.β2, ε = (float) this.ε;
+
+        for (int l = 0; l < weights.length; l++) {
+            FloatMatrix W = weights[l], G = gradients[l];
+            float[] w = W.getFlatArray(), g = G.getFlatArray();
+            float[] m1 = this.floatMoment1[l], m2 = this.floatMoment2[l];
+            int m = W.getRowDimension(), n = W.getColumnDimension();
+
+            for (int i = 0; i < m; i++) {
+                int wi = W.getOffset() + i * W.getStride();
+                int gi = G.getOffset() + i * G.getStride();
+                int mi = i * n;
+                for (int j = 0; j < n; j++) {
+                    float gij = g[gi + j];
+                    m1[mi + j] = β1 * m1[mi + j] + (1 - β1) * gij;
+                    m2[mi + j] = β2 * m2[mi + j] + (1 - β2) * gij * gij;
+                    w[wi + j] -= stepSize * m1[mi + j] / ((float) Math.sqrt(m2[mi + j]) + ε);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/**
+ * Compact binary format for {@link NNetwork} weights. A little-endian header
+ * is followed by every layer's weights and then its bias, row-major, in the
+ * chosen precision and optionally deflated:
+ *
+ * <pre>
+ * magic "RDNY" | version u16 | precision u8 | flags u8
+ * inputSize i32 | outputSize i32 | hiddenSize i32 | hiddenNum i32
+ * outputActivation u8 | reserved u8[3]
+ * payload length i32 | payload
+ * </pre>
+ *
+ * {@link Precision#INT8} checkpoints hold the same weights as
+ * {@link QuantizedNNetwork} with per-channel scales, at about an eighth of
+ * the FLOAT64 size. Version 1 files, written before layers had biases, have no activation
+ * field and no biases; they load as a ReLU output network with zero biases.
+ * Uncompressed files are memory mapped on load and decoded straight into the
+ * network's weight arrays.
+ */
+public class Checkpoint {
+
+    /**
+     * Storage of each weight. INT8 keeps one float32 scale per output column
+     * followed by the symmetric int8 weights, with biases stored as FLOAT32.
+     */
+    public enum Precision {
+        FLOAT64(8), FLOAT32(4), FLOAT16(2), INT8(1);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final int MAGIC = 0x594E4452; // "RDNY" read little-endian
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int FLAG_DEFLATE = 1;
+
+    // Deflate cannot compress by more than about 1032:1, so a larger declared
+    // payload means a corrupt header.
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private Checkpoint() {
+    }
+
+    public static void save(NNetwork network, File file, Precision precision, boolean compress) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            save(network, out, precision, compress);
+        }
+    }
+
+    /**
+     * Writes the network to a stream, so robots can save through a
+     * RobocodeFileOutputStream.
+     */
+    public static void save(NNetwork network, OutputStream out, Precision precision, boolean compress) throws IOException {
+        Matrix[] weights = parameters(network, true);
+
+        int size = 0;
+        for (int i = 0; i < weights.length; i++)
+            size += size(weights[i], precision(precision, i % 2 == 1));
+
+        ByteBuffer payload = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < weights.length; i++)
+            encode(weights[i], payload, precision(precision, i % 2 == 1));
+
+        byte[] data = payload.array();
+        int length = data.length;
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] deflated = new byte[data.length + 64];
+            length = 0;
+            while (!deflater.finished()) {
+                if (length == deflated.length)
+                    deflated = java.util.Arrays.copyOf(deflated, 2 * deflated.length);
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            deflater.end();
+            data = deflated;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putShort(VERSION)
+                .put((byte) precision.ordinal())
+                .put((byte) (compress ? FLAG_DEFLATE : 0))
+                .putInt(network.getInputSize())
+                .putInt(network.getOutputSize())
+                .putInt(network.getHiddenSize())
+                .putInt(network.getHiddenNum())
+                .put((byte) network.getOutputActivation().ordinal())
+                .put(new byte[3])
+                .putInt(length);
+
+        out.write(header.array());
+        out.write(data, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Loads a network, memory mapping the file when possible.
+     */
+    public static NNetwork load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException | UnsupportedOperationException e) {
+                buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+                buffer.flip();
+            }
+            return load(buffer);
+        }
+    }
+
+    public static NNetwork load(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int n; (n = in.read(chunk)) >= 0;)
+            bytes.write(chunk, 0, n);
+        return load(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    public static NNetwork load(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE - 4 || buffer.getInt() != MAGIC)
+            throw new IOException("Not a network checkpoint.");
+
+        short version = buffer.getShort();
+        if (version != 1 && version != VERSION)
+            throw new IOException("Unsupported checkpoint version: " + version);
+
+        int precisionId = buffer.get();
+        if (precisionId < 0 || precisionId >= Precision.values().length)
+            throw new IOException("Unsupported precision: " + precisionId);
+        Precision precision = Precision.values()[precisionId];
+        boolean compressed = (buffer.get() & FLAG_DEFLATE) != 0;
+
+        int inputSize = buffer.getInt(), outputSize = buffer.getInt();
+        int hiddenSize = buffer.getInt(), hiddenNum = buffer.getInt();
+
+        Activation outputActivation = Activation.RELU;
+        if (version > 1) {
+            if (buffer.remaining() < 8)
+                throw new IOException("Truncated checkpoint.");
+            int activationId = buffer.get();
+            if (activationId < 0 || activationId >= Activation.values().length)
+                throw new IOException("Unsupported activation: " + activationId);
+            outputActivation = Activation.values()[activationId];
+            buffer.position(buffer.position() + 3);
+        }
+
+        if (inputSize <= 0 || outputSize <= 0 || hiddenSize <= 0 || hiddenNum < 1)
+            throw new IOException("Illegal network shape: " + inputSize + "-" + hiddenSize + "x" + hiddenNum + "-" + outputSize);
+
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IOException("Truncated checkpoint.");
+
+        // Checked against the payload before anything is allocated.
+        boolean biases = version > 1;
+        long expected = size(inputSize, hiddenSize, precision, biases)
+                + (hiddenNum - 1) * size(hiddenSize, hiddenSize, precision, biases)
+                + size(hiddenSize, outputSize, precision, biases);
+        if (compressed ? expected > Integer.MAX_VALUE || expected > (long) MAX_DEFLATE_RATIO * length : expected != length)
+            throw new IOException("Corrupt checkpoint payload.");
+        int size = (int) expected;
+
+        NNetwork network = new NNetwork(inputSize, outputSize, hiddenSize, hiddenNum, outputActivation);
+        Matrix[] weights = parameters(network, biases);
+
+        ByteBuffer payload;
+        if (compressed) {
+            byte[] deflated = new byte[length];
+            buffer.get(deflated);
+
+            byte[] inflated = new byte[size];
+            Inflater inflater = new Inflater();
+            inflater.setInput(deflated);
+            try {
+                if (inflater.inflate(inflated) != inflated.length || !inflater.finished())
+                    throw new IOException("Corrupt checkpoint payload.");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt checkpoint payload.", e);
+            } finally {
+                inflater.end();
+            }
+            payload = ByteBuffer.wrap(inflated);
+        } else {
+            payload = buffer.slice();
+        }
+
+        payload.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < weights.length; i++)
+            decode(payload, weights[i], precision(precision, biases && i % 2 == 1));
+
+        return network;
+    }
+
+    // Weights, followed by the bias if there is one, of every layer in order.
+    private static Matrix[] parameters(NNetwork network, boolean biases) {
+        Dense[] layers = network.getLayers();
+        Matrix[] parameters = new Matrix[biases ? 2 * layers.length : layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            if (biases) {
+                parameters[2 * i] = layers[i].getWeights();
+                parameters[2 * i + 1] = layers[i].getBias();
+            } else {
+                parameters[i] = layers[i].getWeights();
+            }
+        }
+        return parameters;
+    }
+
+    private static Precision precision(Precision precision, boolean bias) {
+        return bias && precision == Precision.INT8 ? Precision.FLOAT32 : precision;
+    }
+
+    // Payload bytes of a layer, its weights and, if stored, its bias.
+    private static long size(int in, int out, Precision precision, boolean bias) {
+        long size = (long) in * out * precision.bytes;
+        if (precision == Precision.INT8)
+            size += 4L * out;
+        return bias ? size + (long) out * precision(precision, true).bytes : size;
+    }
+
+    private static int size(Matrix w, Precision precision) {
+        int n = w.getColumnDimension(), size = w.getRowDimension() * n * precision.bytes;
+        return precision == Precision.INT8 ? size + 4 * n : size;
+    }
+
+    private static void encode(Matrix w, ByteBuffer out, Precision precision) {
+        double[] a = w.getFlatArray();
+        int m = w.getRowDimension(), n = w.getColumnDimension();
+
+        float[] scales = null;
+        if (precision == Precision.INT8) {
+            scales = new float[n];
+            for (int i = 0; i < m; i++)
+                for (int j = 0; j < n; j++)
+                    scales[j] = Math.max(scales[j], (float) Math.abs(a[w.getOffset() + i * w.getStride() + j]) / 127);
+            for (float scale : scales)
+                out.putFloat(scale);
+        }
+
+        for (int i = 0; i < m; i++) {
+            int row = w.getOffset() + i * w.getStride();
+            for (int j = row; j < row + n; j++) {
+                switch (precision) {
+                    case FLOAT64:
+                        out.putDouble(a[j]);
+                        break;
+                    case FLOAT32:
+                        out.putFloat((float) a[j]);
+                        break;
+                    case INT8:
+                        float scale = scales[j - row];
+                        out.put((byte) (scale == 0 ? 0 : Math.round(a[j] / scale)));
+                        break;
+                    default:
+                        out.putShort((short) toHalf((float) a[j]));
+                }
+            }
+        }
+    }
+
+    // Weights built by NNetwork are contiguous, so each layer is one bulk read.
+    private static void decode(ByteBuffer in, Matrix w, Precision precision) {
+        double[] a = w.getFlatArray();
+        int n = w.getColumnDimension(), count = w.getRowDimension() * n;
+
+        switch (precision) {
+            case FLOAT64:
+                in.asDoubleBuffer().get(a, 0, count);
+                break;
+            case FLOAT32:
+                FloatBuffer floats = in.asFloatBuffer();
+                for (int j = 0; j < count; j++)
+                    a[j] = floats.get(j);
+                break;
+            case INT8:
+                FloatBuffer scales = in.asFloatBuffer();
+                int base = in.position() + 4 * n;
+                for (int j = 0; j < count; j++)
+                    a[j] = in.get(base + j) * scales.get(j % n);
+                in.position(base);
+                break;
+            default:
+                ShortBuffer halves = in.asShortBuffer();
+                for (int j = 0; j < count; j++)
+                    a[j] = fromHalf(halves.get(j));
+        }
+        in.position(in.position() + count * precision.bytes);
+    }
+
+    /**
+     * IEEE 754 binary16 bits of f, rounding to nearest.
+     */
+    static int toHalf(float f) {
+        int bits = Float.floatToIntBits(f);
+        int sign = bits >>> 16 & 0x8000;
+        int val = (bits & 0x7fffffff) + 0x1000;
+
+        if (val >= 0x47800000) {
+            if ((bits & 0x7fffffff) >= 0x47800000) {
+                if (val < 0x7f800000)
+                    return sign | 0x7c00;
+                return sign | 0x7c00 | (bits & 0x007fffff) >>> 13;
+            }
+            return sign | 0x7bff;
+        }
+        if (val >= 0x38800000)
+            return sign | val - 0x38000000 >>> 13;
+        if (val < 0x33000000)
+            return sign;
+
+        val = (bits & 0x7fffffff) >>> 23;
+        return sign | ((bits & 0x7fffff | 0x800000) + (0x800000 >>> val - 102) >>> 126 - val);
+    }
+
+    /**
+     * Value of IEEE 754 binary16 bits.
+     */
+    static float fromHalf(int h) {
+        int sign = (h & 0x8000) << 16;
+        int exp = h >>> 10 & 0x1f;
+        int mant = h & 0x3ff;
+
+        if (exp == 0x1f)
+            return Float.intBitsToFloat(sign | 0x7f800000 | mant << 13);
+        if (exp == 0) {
+            float v = mant * 0x1p-24f;
+            return sign != 0 ? -v : v;
+        }
+        return Float.intBitsToFloat(sign | exp + 112 << 23 | mant << 13);
+    }
+}
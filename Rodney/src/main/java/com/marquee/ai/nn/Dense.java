@@ -0,0 +1,122 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+import com.marquee.ai.*;
+
+/**
+ * Fully connected layer, out = f(x * W + b), x holding one sample per row.
+ * The product, the bias and a ReLU are computed by a single fused kernel,
+ * {@link Matrix#timesPlusInto}, so the output is written in one pass.
+ */
+public class Dense {
+
+    private final Matrix weights;
+    private final Matrix bias;
+    private final Activation activation;
+
+    /**
+     * Layer with random weights and zero bias.
+     */
+    public Dense(int inputSize, int outputSize, Activation activation) {
+        this.weights = Matrix.random(inputSize, outputSize);
+        this.bias = new Matrix(1, outputSize);
+        this.activation = activation;
+    }
+
+    /**
+     * Layer with the same shape, activation and parameters as other.
+     */
+    public Dense(Dense other) {
+        this.weights = other.weights.copy();
+        this.bias = other.bias.copy();
+        this.activation = other.activation;
+    }
+
+    /**
+     * Overwrites the parameters with those of a layer of the same shape.
+     */
+    public void copyFrom(Dense other) {
+        checkShape(other);
+        System.arraycopy(other.weights.getFlatArray(), 0, this.weights.getFlatArray(), 0, getInputSize() * getOutputSize());
+        System.arraycopy(other.bias.getFlatArray(), 0, this.bias.getFlatArray(), 0, getOutputSize());
+    }
+
+    /**
+     * Polyak update in place, params = τ*other + (1-τ)*params.
+     */
+    public void softUpdateFrom(Dense other, double τ) {
+        checkShape(other);
+        blend(other.weights.getFlatArray(), this.weights.getFlatArray(), τ, getInputSize() * getOutputSize());
+        blend(other.bias.getFlatArray(), this.bias.getFlatArray(), τ, getOutputSize());
+    }
+
+    /**
+     * Forward pass into an existing matrix.
+     *
+     * @param x rows x inputSize inputs.
+     * @param out rows x outputSize, receives f(x * W + b).
+     * @return out
+     */
+    public Matrix foward(Matrix x, Matrix out) {
+        return x.timesPlusInto(this.weights, this.bias, this.activation == Activation.RELU, out);
+    }
+
+    /**
+     * Backpropagates through a {@link #foward} call.
+     *
+     * @param x input of the forward pass.
+     * @param out output of the forward pass.
+     * @param delta gradient of the loss with respect to out, overwritten with
+     * the gradient with respect to the pre-activation.
+     * @param weightGrad receives the weight gradient, x' * delta.
+     * @param biasGrad receives the bias gradient, the column sums of delta.
+     * @param inputDelta receives the gradient with respect to x, delta * W',
+     * or null when it is not needed.
+     */
+    public void backward(Matrix x, Matrix out, Matrix delta, Matrix weightGrad, Matrix biasGrad, Matrix inputDelta) {
+        if (this.activation == Activation.RELU)
+            Functions.reluPrimeTimesEquals(delta, out);
+
+        x.transposeTimesInto(delta, weightGrad);
+
+        double[] g = biasGrad.getFlatArray(), d = delta.getFlatArray();
+        int n = getOutputSize(), gi = biasGrad.getOffset();
+        java.util.Arrays.fill(g, gi, gi + n, 0);
+        for (int i = 0; i < delta.getRowDimension(); i++)
+            Kernels.add(g, gi, d, delta.getOffset() + i * delta.getStride(), g, gi, n);
+
+        if (inputDelta != null)
+            delta.timesTransposeInto(this.weights, inputDelta);
+    }
+
+    private void checkShape(Dense other) {
+        if (other.getInputSize() != getInputSize() || other.getOutputSize() != getOutputSize()
+                || other.activation != this.activation)
+            throw new IllegalArgumentException("Layer shapes must agree.");
+    }
+
+    private static void blend(double[] src, double[] dst, double τ, int count) {
+        for (int j = 0; j < count; j++)
+            dst[j] += τ * (src[j] - dst[j]);
+    }
+
+    public Matrix getWeights() {
+        return weights;
+    }
+
+    public Matrix getBias() {
+        return bias;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public int getInputSize() {
+        return weights.getRowDimension();
+    }
+
+    public int getOutputSize() {
+        return weights.getColumnDimension();
+    }
+}
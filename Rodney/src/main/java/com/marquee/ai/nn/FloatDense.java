@@ -0,0 +1,121 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+import com.marquee.ai.*;
+
+/**
+ * Single-precision version of {@link Dense}, on {@link FloatMatrix} storage.
+ */
+public class FloatDense {
+
+    private final FloatMatrix weights;
+    private final FloatMatrix bias;
+    private final Activation activation;
+
+    /**
+     * Layer with random weights and zero bias.
+     */
+    public FloatDense(int inputSize, int outputSize, Activation activation) {
+        this.weights = FloatMatrix.random(inputSize, outputSize);
+        this.bias = new FloatMatrix(1, outputSize);
+        this.activation = activation;
+    }
+
+    /**
+     * Layer with the same shape, activation and parameters as other.
+     */
+    public FloatDense(FloatDense other) {
+        this.weights = other.weights.copy();
+        this.bias = other.bias.copy();
+        this.activation = other.activation;
+    }
+
+    /**
+     * Single-precision copy of a double precision layer.
+     */
+    public FloatDense(Dense other) {
+        this.weights = new FloatMatrix(other.getWeights());
+        this.bias = new FloatMatrix(other.getBias());
+        this.activation = other.getActivation();
+    }
+
+    /**
+     * Overwrites the parameters with those of a layer of the same shape.
+     */
+    public void copyFrom(FloatDense other) {
+        checkShape(other);
+        System.arraycopy(other.weights.getFlatArray(), 0, this.weights.getFlatArray(), 0, getInputSize() * getOutputSize());
+        System.arraycopy(other.bias.getFlatArray(), 0, this.bias.getFlatArray(), 0, getOutputSize());
+    }
+
+    /**
+     * Polyak update in place, params = τ*other + (1-τ)*params.
+     */
+    public void softUpdateFrom(FloatDense other, double τ) {
+        checkShape(other);
+        blend(other.weights.getFlatArray(), this.weights.getFlatArray(), (float) τ, getInputSize() * getOutputSize());
+        blend(other.bias.getFlatArray(), this.bias.getFlatArray(), (float) τ, getOutputSize());
+    }
+
+    /**
+     * Forward pass into an existing matrix, out = f(x * W + b).
+     */
+    public FloatMatrix foward(FloatMatrix x, FloatMatrix out) {
+        return x.timesPlusInto(this.weights, this.bias, this.activation == Activation.RELU, out);
+    }
+
+    /**
+     * Backpropagates through a {@link #foward} call, see
+     * {@link Dense#backward}.
+     */
+    public void backward(FloatMatrix x, FloatMatrix out, FloatMatrix delta,
+            FloatMatrix weightGrad, FloatMatrix biasGrad, FloatMatrix inputDelta) {
+        if (this.activation == Activation.RELU)
+            Functions.reluPrimeTimesEquals(delta, out);
+
+        x.transposeTimesInto(delta, weightGrad);
+
+        float[] g = biasGrad.getFlatArray(), d = delta.getFlatArray();
+        int n = getOutputSize(), gi = biasGrad.getOffset();
+        java.util.Arrays.fill(g, gi, gi + n, 0);
+        for (int i = 0; i < delta.getRowDimension(); i++) {
+            int di = delta.getOffset() + i * delta.getStride();
+            for (int j = 0; j < n; j++)
+                g[gi + j] += d[di + j];
+        }
+
+        if (inputDelta != null)
+            delta.timesTransposeInto(this.weights, inputDelta);
+    }
+
+    private void checkShape(FloatDense other) {
+        if (other.getInputSize() != getInputSize() || other.getOutputSize() != getOutputSize()
+                || other.activation != this.activation)
+            throw new IllegalArgumentException("Layer shapes must agree.");
+    }
+
+    private static void blend(float[] src, float[] dst, float τ, int count) {
+        for (int j = 0; j < count; j++)
+            dst[j] += τ * (src[j] - dst[j]);
+    }
+
+    public FloatMatrix getWeights() {
+        return weights;
+    }
+
+    public FloatMatrix getBias() {
+        return bias;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public int getInputSize() {
+        return weights.getRowDimension();
+    }
+
+    public int getOutputSize() {
+        return weights.getColumnDimension();
+    }
+}
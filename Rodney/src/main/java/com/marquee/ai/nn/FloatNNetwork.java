@@ -0,0 +1,269 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+
+/**
+ * Single-precision version of {@link NNetwork}. It has the same layer
+ * structure, inference, batched, backpropagation and target network paths,
+ * on {@link FloatMatrix} storage, so it moves half the bytes per layer.
+ */
+public class FloatNNetwork {
+
+    private final int inputSize;
+    private final int outputSize;
+    private final int hiddenSize;
+    private final int hiddenNum;
+
+    private final FloatDense[] layers;
+
+    // Weights and biases of every layer, interleaved, as seen by the optimizer.
+    private final FloatMatrix[] parameters;
+
+    // Reusable buffers for the single-sample inference path, not thread safe.
+    private final FloatMatrix input;
+    private final FloatMatrix[] activations;
+
+    // Buffers for the batched path, reallocated only when the batch size changes.
+    private FloatMatrix batchInput;
+    private FloatMatrix[] batchActivations;
+
+    // Backpropagation buffers, gradients are shaped like the parameters.
+    private final FloatMatrix[] gradients;
+    private FloatMatrix[] deltas;
+
+    // Frozen target network, allocated by the first syncTarget().
+    private FloatDense[] targetLayers;
+    private FloatMatrix[] targetActivations;
+
+    /**
+     * Network with ReLU on every layer, output included.
+     */
+    public FloatNNetwork(int inputSize, int outputSize, int hiddenSize, int hiddenNum) {
+        this(inputSize, outputSize, hiddenSize, hiddenNum, Activation.RELU);
+    }
+
+    /**
+     * Network with ReLU hidden layers and the given output activation.
+     */
+    public FloatNNetwork(int inputSize, int outputSize, int hiddenSize, int hiddenNum, Activation outputActivation) {
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.hiddenSize = hiddenSize;
+        this.hiddenNum = hiddenNum;
+
+        this.layers = new FloatDense[hiddenNum + 1];
+
+        this.layers[0] = new FloatDense(inputSize, hiddenSize, Activation.RELU);
+
+        for (int i = 1; i < hiddenNum; i++)
+            this.layers[i] = new FloatDense(hiddenSize, hiddenSize, Activation.RELU);
+
+        this.layers[hiddenNum] = new FloatDense(hiddenSize, outputSize, outputActivation);
+
+        this.parameters = new FloatMatrix[2 * (hiddenNum + 1)];
+        this.gradients = new FloatMatrix[2 * (hiddenNum + 1)];
+        layerParameters();
+
+        this.input = new FloatMatrix(1, inputSize);
+        this.activations = layerBuffers(1);
+    }
+
+    /**
+     * Single-precision copy of a double precision network.
+     */
+    public FloatNNetwork(NNetwork other) {
+        this.inputSize = other.getInputSize();
+        this.outputSize = other.getOutputSize();
+        this.hiddenSize = other.getHiddenSize();
+        this.hiddenNum = other.getHiddenNum();
+
+        Dense[] src = other.getLayers();
+        this.layers = new FloatDense[this.hiddenNum + 1];
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.layers[i] = new FloatDense(src[i]);
+
+        this.parameters = new FloatMatrix[2 * (this.hiddenNum + 1)];
+        this.gradients = new FloatMatrix[2 * (this.hiddenNum + 1)];
+        layerParameters();
+
+        this.input = new FloatMatrix(1, this.inputSize);
+        this.activations = layerBuffers(1);
+    }
+
+    /**
+     * Inference on a single state using the network's own layer buffers, so
+     * no memory is allocated per call.
+     *
+     * @param x state, inputSize values.
+     * @param out receives the outputSize network outputs.
+     * @return out
+     */
+    public float[] foward(float[] x, float[] out) {
+        if (x.length != this.inputSize || out.length != this.outputSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        System.arraycopy(x, 0, this.input.getFlatArray(), 0, this.inputSize);
+
+        FloatMatrix ret = this.input;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.layers[i].foward(ret, this.activations[i]);
+
+        System.arraycopy(ret.getFlatArray(), 0, out, 0, this.outputSize);
+        return out;
+    }
+
+    /**
+     * Batched forward pass, one fused matrix-matrix product per layer.
+     *
+     * @param x batchSize x inputSize states, one per row.
+     * @return batchSize x outputSize outputs. The matrix is owned by the
+     * network and is overwritten by the next batched call.
+     */
+    public FloatMatrix fowardBatch(FloatMatrix x) {
+        if (x.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        if (this.batchActivations == null || this.batchActivations[0].getRowDimension() != x.getRowDimension()) {
+            this.batchActivations = layerBuffers(x.getRowDimension());
+            this.deltas = layerBuffers(x.getRowDimension());
+        }
+        this.batchInput = x;
+
+        FloatMatrix ret = x;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.layers[i].foward(ret, this.batchActivations[i]);
+
+        return ret;
+    }
+
+    /**
+     * Backpropagates through the last {@link #fowardBatch(FloatMatrix)} call,
+     * filling the weight and bias gradients.
+     *
+     * @param outputGrad batchSize x outputSize gradient of the loss with
+     * respect to the network outputs of that call.
+     */
+    public void backward(FloatMatrix outputGrad) {
+        if (this.batchInput == null)
+            throw new IllegalStateException("No batched forward pass to backpropagate.");
+
+        FloatMatrix out = this.batchActivations[this.hiddenNum];
+        if (outputGrad.getRowDimension() != out.getRowDimension()
+                || outputGrad.getColumnDimension() != this.outputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        FloatMatrix delta = this.deltas[this.hiddenNum];
+        delta.setMatrix(0, delta.getRowDimension() - 1, 0, this.outputSize - 1, outputGrad);
+
+        for (int i = this.hiddenNum; i >= 0; i--) {
+            FloatMatrix x = i > 0 ? this.batchActivations[i - 1] : this.batchInput;
+            FloatMatrix inputDelta = i > 0 ? this.deltas[i - 1] : null;
+
+            this.layers[i].backward(x, this.batchActivations[i], this.deltas[i],
+                    this.gradients[2 * i], this.gradients[2 * i + 1], inputDelta);
+        }
+    }
+
+    /**
+     * Updates the weights in place from the gradients of the last
+     * {@link #backward(FloatMatrix)} call.
+     */
+    public void step(Optimizer optimizer) {
+        optimizer.step(this.parameters, this.gradients);
+    }
+
+    /**
+     * Hard update of the target network, target = weights.
+     */
+    public void syncTarget() {
+        if (this.targetLayers == null) {
+            this.targetLayers = new FloatDense[this.hiddenNum + 1];
+            for (int i = 0; i <= this.hiddenNum; i++)
+                this.targetLayers[i] = new FloatDense(this.layers[i]);
+            return;
+        }
+
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.targetLayers[i].copyFrom(this.layers[i]);
+    }
+
+    /**
+     * Polyak update of the target network in place,
+     * target = τ*weights + (1-τ)*target.
+     */
+    public void softUpdateTarget(double τ) {
+        if (this.targetLayers == null) {
+            syncTarget();
+            return;
+        }
+
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.targetLayers[i].softUpdateFrom(this.layers[i], τ);
+    }
+
+    /**
+     * Batched forward pass through the target network, on its own buffers.
+     *
+     * @param x batchSize x inputSize states, one per row.
+     * @return batchSize x outputSize target outputs, owned by the network.
+     */
+    public FloatMatrix fowardTarget(FloatMatrix x) {
+        if (this.targetLayers == null)
+            throw new IllegalStateException("Target network was never synced.");
+        if (x.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        if (this.targetActivations == null || this.targetActivations[0].getRowDimension() != x.getRowDimension())
+            this.targetActivations = layerBuffers(x.getRowDimension());
+
+        FloatMatrix ret = x;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.targetLayers[i].foward(ret, this.targetActivations[i]);
+
+        return ret;
+    }
+
+    private FloatMatrix[] layerBuffers(int rows) {
+        FloatMatrix[] buffers = new FloatMatrix[this.hiddenNum + 1];
+
+        for (int i = 0; i < this.hiddenNum; i++)
+            buffers[i] = new FloatMatrix(rows, this.hiddenSize);
+
+        buffers[this.hiddenNum] = new FloatMatrix(rows, this.outputSize);
+        return buffers;
+    }
+
+    private void layerParameters() {
+        for (int i = 0; i <= this.hiddenNum; i++) {
+            this.parameters[2 * i] = this.layers[i].getWeights();
+            this.parameters[2 * i + 1] = this.layers[i].getBias();
+        }
+        for (int i = 0; i < this.parameters.length; i++)
+            this.gradients[i] = new FloatMatrix(this.parameters[i].getRowDimension(),
+                    this.parameters[i].getColumnDimension());
+    }
+
+    FloatDense[] getLayers() {
+        return layers;
+    }
+
+    public Activation getOutputActivation() {
+        return layers[hiddenNum].getActivation();
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    public int getHiddenNum() {
+        return hiddenNum;
+    }
+}
@@ -1,7 +1,6 @@
 package com.marquee.ai.nn;
 
 import jama.*;
-import com.marquee.ai.*;
 
 public class NNetwork {
 
@@ -10,22 +9,89 @@ public class NNetwork {
     private final int hiddenSize;
     private final int hiddenNum;
 
-    private Matrix[] weights;
+    private final Dense[] layers;
 
+    // Weights and biases of every layer, interleaved, as seen by the optimizer.
+    private final Matrix[] parameters;
+
+    // Reusable buffers for the single-sample inference path, not thread safe.
+    private final Matrix input;
+    private final Matrix[] activations;
+
+    // Buffers for the batched path, reallocated only when the batch size changes.
+    private Matrix pairedInput;
+    private Matrix batchInput;
+    private Matrix[] batchActivations;
+
+    // Backpropagation buffers, gradients are shaped like the parameters.
+    private final Matrix[] gradients;
+    private Matrix[] deltas;
+
+    // Frozen target network, allocated by the first syncTarget().
+    private Dense[] targetLayers;
+    private Matrix[] targetActivations;
+
+    /**
+     * Network with ReLU on every layer, output included.
+     */
     public NNetwork(int inputSize, int outputSize, int hiddenSize, int hiddenNum) {
+        this(inputSize, outputSize, hiddenSize, hiddenNum, Activation.RELU);
+    }
+
+    /**
+     * Network with ReLU hidden layers and the given output activation. Use
+     * {@link Activation#IDENTITY} for Q-values, which ReLU would clip at 0.
+     */
+    public NNetwork(int inputSize, int outputSize, int hiddenSize, int hiddenNum, Activation outputActivation) {
         this.inputSize = inputSize;
         this.outputSize = outputSize;
         this.hiddenSize = hiddenSize;
         this.hiddenNum = hiddenNum;
 
-        this.weights = new Matrix[hiddenNum + 1];
+        this.layers = new Dense[hiddenNum + 1];
 
-        this.weights[0] = Matrix.random(inputSize, hiddenSize);
+        this.layers[0] = new Dense(inputSize, hiddenSize, Activation.RELU);
 
         for (int i = 1; i < hiddenNum; i++)
-            this.weights[i] = Matrix.random(hiddenSize, hiddenSize);
+            this.layers[i] = new Dense(hiddenSize, hiddenSize, Activation.RELU);
+
+        this.layers[hiddenNum] = new Dense(hiddenSize, outputSize, outputActivation);
 
-        this.weights[hiddenNum] = Matrix.random(hiddenSize, outputSize);
+        this.parameters = new Matrix[2 * (hiddenNum + 1)];
+        this.gradients = new Matrix[2 * (hiddenNum + 1)];
+
+        for (int i = 0; i <= hiddenNum; i++) {
+            this.parameters[2 * i] = this.layers[i].getWeights();
+            this.parameters[2 * i + 1] = this.layers[i].getBias();
+        }
+        for (int i = 0; i < this.parameters.length; i++)
+            this.gradients[i] = new Matrix(this.parameters[i].getRowDimension(),
+                    this.parameters[i].getColumnDimension());
+
+        this.input = new Matrix(1, inputSize);
+        this.activations = layerBuffers(1);
+    }
+
+    /**
+     * Network with the same shape and weights as other, and its own buffers.
+     */
+    public NNetwork(NNetwork other) {
+        this(other.inputSize, other.outputSize, other.hiddenSize, other.hiddenNum, other.getOutputActivation());
+        copyWeightsFrom(other);
+    }
+
+    /**
+     * Overwrites the weights with those of a network of the same shape, using
+     * bulk array copies and no allocation.
+     */
+    public void copyWeightsFrom(NNetwork other) {
+        if (other.inputSize != this.inputSize || other.outputSize != this.outputSize
+                || other.hiddenSize != this.hiddenSize || other.hiddenNum != this.hiddenNum
+                || other.getOutputActivation() != this.getOutputActivation())
+            throw new IllegalArgumentException("Network shapes must agree.");
+
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.layers[i].copyFrom(other.layers[i]);
     }
 
     public Matrix foward(Matrix x) {
@@ -34,15 +100,210 @@ public class NNetwork {
         else if (x.getColumnDimension() != this.inputSize)
             throw new IllegalArgumentException("Matrix dimensions must agree.");
 
-        Matrix ret = x.times(this.weights[0]);
-        ret = ret.applyFunc(Functions::relu);
+        Matrix ret = x;
+        for (Dense layer : this.layers)
+            ret = layer.foward(ret, new Matrix(1, layer.getOutputSize()));
+
+        return ret;
+    }
+
+    /**
+     * Inference on a single state using the network's own layer buffers, so
+     * no memory is allocated per call.
+     *
+     * @param x state, inputSize values.
+     * @param out receives the outputSize network outputs.
+     * @return out
+     */
+    public double[] foward(double[] x, double[] out) {
+        if (x.length != this.inputSize || out.length != this.outputSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        System.arraycopy(x, 0, this.input.getFlatArray(), 0, this.inputSize);
+
+        Matrix ret = this.input;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.layers[i].foward(ret, this.activations[i]);
+
+        System.arraycopy(ret.getFlatArray(), 0, out, 0, this.outputSize);
+        return out;
+    }
+
+    /**
+     * Batched forward pass, one fused matrix-matrix product per layer.
+     *
+     * @param x batchSize x inputSize states, one per row.
+     * @return batchSize x outputSize outputs. The matrix is owned by the
+     * network and is overwritten by the next batched call.
+     */
+    public Matrix fowardBatch(Matrix x) {
+        if (x.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        ensureBatch(x.getRowDimension());
+        this.batchInput = x;
+
+        Matrix ret = x;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.layers[i].foward(ret, this.batchActivations[i]);
+
+        return ret;
+    }
+
+    /**
+     * Evaluates the states and next states of a minibatch in a single batched
+     * pass.
+     *
+     * @param states batchSize x inputSize states.
+     * @param nextStates batchSize x inputSize next states.
+     * @return 2*batchSize x outputSize outputs, the first batchSize rows for
+     * states and the rest for nextStates. Owned by the network, as in
+     * {@link #fowardBatch(Matrix)}.
+     */
+    public Matrix fowardBatch(Matrix states, Matrix nextStates) {
+        int batchSize = states.getRowDimension();
+        if (nextStates.getRowDimension() != batchSize
+                || states.getColumnDimension() != this.inputSize
+                || nextStates.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        if (this.pairedInput == null || this.pairedInput.getRowDimension() != 2 * batchSize)
+            this.pairedInput = new Matrix(2 * batchSize, this.inputSize);
+
+        this.pairedInput.setMatrix(0, batchSize - 1, 0, this.inputSize - 1, states);
+        this.pairedInput.setMatrix(batchSize, 2 * batchSize - 1, 0, this.inputSize - 1, nextStates);
+
+        return fowardBatch(this.pairedInput);
+    }
+
+    /**
+     * Backpropagates through the last {@link #fowardBatch(Matrix)} call,
+     * filling the weight and bias gradients.
+     *
+     * @param outputGrad batchSize x outputSize gradient of the loss with
+     * respect to the network outputs of that call.
+     */
+    public void backward(Matrix outputGrad) {
+        if (this.batchInput == null)
+            throw new IllegalStateException("No batched forward pass to backpropagate.");
+
+        Matrix out = this.batchActivations[this.hiddenNum];
+        if (outputGrad.getRowDimension() != out.getRowDimension()
+                || outputGrad.getColumnDimension() != this.outputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        Matrix delta = this.deltas[this.hiddenNum];
+        delta.setMatrix(0, delta.getRowDimension() - 1, 0, this.outputSize - 1, outputGrad);
+
+        for (int i = this.hiddenNum; i >= 0; i--) {
+            Matrix x = i > 0 ? this.batchActivations[i - 1] : this.batchInput;
+            Matrix inputDelta = i > 0 ? this.deltas[i - 1] : null;
+
+            this.layers[i].backward(x, this.batchActivations[i], this.deltas[i],
+                    this.gradients[2 * i], this.gradients[2 * i + 1], inputDelta);
+        }
+    }
+
+    /**
+     * Updates the weights in place from the gradients of the last
+     * {@link #backward(Matrix)} call.
+     */
+    public void step(Optimizer optimizer) {
+        optimizer.step(this.parameters, this.gradients);
+    }
 
-        for (int i = 1; i < hiddenNum; i++) {
-            ret = ret.times(this.weights[i]);
-            ret = ret.applyFunc(Functions::relu);
+    /**
+     * Hard update of the target network, target = weights. The target
+     * buffers are allocated on the first call only.
+     */
+    public void syncTarget() {
+        if (this.targetLayers == null) {
+            this.targetLayers = new Dense[this.hiddenNum + 1];
+            for (int i = 0; i <= this.hiddenNum; i++)
+                this.targetLayers[i] = new Dense(this.layers[i]);
+            return;
         }
 
-        ret = ret.times(this.weights[this.hiddenNum]);
-        return ret.applyFunc(Functions::relu);
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.targetLayers[i].copyFrom(this.layers[i]);
+    }
+
+    /**
+     * Polyak update of the target network in place,
+     * target = τ*weights + (1-τ)*target.
+     */
+    public void softUpdateTarget(double τ) {
+        if (this.targetLayers == null) {
+            syncTarget();
+            return;
+        }
+
+        for (int i = 0; i <= this.hiddenNum; i++)
+            this.targetLayers[i].softUpdateFrom(this.layers[i], τ);
+    }
+
+    /**
+     * Batched forward pass through the target network. Uses its own buffers,
+     * so it does not disturb the activations kept for {@link #backward}.
+     *
+     * @param x batchSize x inputSize states, one per row.
+     * @return batchSize x outputSize target outputs, owned by the network.
+     */
+    public Matrix fowardTarget(Matrix x) {
+        if (this.targetLayers == null)
+            throw new IllegalStateException("Target network was never synced.");
+        if (x.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        if (this.targetActivations == null || this.targetActivations[0].getRowDimension() != x.getRowDimension())
+            this.targetActivations = layerBuffers(x.getRowDimension());
+
+        Matrix ret = x;
+        for (int i = 0; i <= this.hiddenNum; i++)
+            ret = this.targetLayers[i].foward(ret, this.targetActivations[i]);
+
+        return ret;
+    }
+
+    private Matrix[] layerBuffers(int rows) {
+        Matrix[] buffers = new Matrix[this.hiddenNum + 1];
+
+        for (int i = 0; i < this.hiddenNum; i++)
+            buffers[i] = new Matrix(rows, this.hiddenSize);
+
+        buffers[this.hiddenNum] = new Matrix(rows, this.outputSize);
+        return buffers;
+    }
+
+    private void ensureBatch(int rows) {
+        if (this.batchActivations != null && this.batchActivations[0].getRowDimension() == rows)
+            return;
+
+        this.batchActivations = layerBuffers(rows);
+        this.deltas = layerBuffers(rows);
+    }
+
+    Dense[] getLayers() {
+        return layers;
+    }
+
+    public Activation getOutputActivation() {
+        return layers[hiddenNum].getActivation();
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    public int getHiddenNum() {
+        return hiddenNum;
     }
 }
@@ -0,0 +1,24 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+
+/**
+ * Updates network weights in place from their gradients. Implementations keep
+ * their per-weight state in buffers allocated on the first step, so later
+ * steps allocate nothing.
+ */
+public interface Optimizer {
+
+    void step(Matrix[] weights, Matrix[] gradients);
+
+    /**
+     * Single-precision step, for {@link FloatNNetwork}. Optimizers that only
+     * train double precision networks need not implement it.
+     *
+     * @exception UnsupportedOperationException the optimizer has no
+     * single-precision step.
+     */
+    default void step(FloatMatrix[] weights, FloatMatrix[] gradients) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no single-precision step.");
+    }
+}
@@ -0,0 +1,208 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+
+/**
+ * Int8 inference copy of an {@link NNetwork}. Weights are quantized
+ * symmetrically to [-127, 127] with one scale per layer or per output
+ * channel. Each layer's input is quantized on the fly with one scale per
+ * call, the dot products are accumulated in int32, and the result is
+ * rescaled, biased and activated in double.
+ *
+ * Without the Vector API the int8 dot products are not vectorized, so this
+ * is no faster than {@link NNetwork#foward(double[], double[])} at Rodney's
+ * layer widths; it is mainly useful to measure the accuracy lost by an
+ * {@link Checkpoint.Precision#INT8} checkpoint.
+ */
+public class QuantizedNNetwork {
+
+    public enum Granularity {
+        PER_LAYER, PER_CHANNEL
+    }
+
+    private static final int Q_MAX = 127;
+
+    private final int inputSize;
+    private final int outputSize;
+    private final int hiddenSize;
+    private final int hiddenNum;
+    private final Granularity granularity;
+
+    // Layer l maps sizes[l] inputs to sizes[l + 1] outputs.
+    private final int[] sizes;
+    private final Activation[] activations;
+
+    // Per layer, transposed to outputs x inputs so each output channel is one
+    // contiguous run of int8 weights.
+    private final byte[][] weights;
+    private final double[][] scales;
+    private final double[][] biases;
+
+    // Scratch for the inference path, not thread safe.
+    private final byte[] quantizedInput;
+    private final double[][] outputs;
+
+    public QuantizedNNetwork(NNetwork network, Granularity granularity) {
+        this.inputSize = network.getInputSize();
+        this.outputSize = network.getOutputSize();
+        this.hiddenSize = network.getHiddenSize();
+        this.hiddenNum = network.getHiddenNum();
+        this.granularity = granularity;
+
+        // The int32 accumulator holds up to 2^31 / 127^2 products.
+        if (Math.max(this.inputSize, this.hiddenSize) > Integer.MAX_VALUE / (Q_MAX * Q_MAX))
+            throw new IllegalArgumentException("Illegal size: " + Math.max(this.inputSize, this.hiddenSize));
+
+        Dense[] layers = network.getLayers();
+        this.sizes = new int[layers.length + 1];
+        this.activations = new Activation[layers.length];
+        this.weights = new byte[layers.length][];
+        this.scales = new double[layers.length][];
+        this.biases = new double[layers.length][];
+        this.outputs = new double[layers.length][];
+
+        this.sizes[0] = this.inputSize;
+        for (int l = 0; l < layers.length; l++) {
+            int in = layers[l].getInputSize(), out = layers[l].getOutputSize();
+            this.sizes[l + 1] = out;
+            this.activations[l] = layers[l].getActivation();
+            this.weights[l] = new byte[in * out];
+            this.scales[l] = new double[out];
+            this.biases[l] = new double[out];
+            this.outputs[l] = new double[out];
+        }
+        this.quantizedInput = new byte[Math.max(this.inputSize, this.hiddenSize)];
+
+        quantize(network);
+    }
+
+    /**
+     * Requantizes the weights of a network of the same shape, reusing the
+     * existing arrays.
+     */
+    public void quantize(NNetwork network) {
+        if (network.getInputSize() != this.inputSize || network.getOutputSize() != this.outputSize
+                || network.getHiddenSize() != this.hiddenSize || network.getHiddenNum() != this.hiddenNum)
+            throw new IllegalArgumentException("Network shapes must agree.");
+
+        Dense[] layers = network.getLayers();
+        for (int l = 0; l < layers.length; l++) {
+            if (layers[l].getActivation() != this.activations[l])
+                throw new IllegalArgumentException("Network shapes must agree.");
+            quantize(layers[l], this.weights[l], this.scales[l], this.biases[l]);
+        }
+    }
+
+    private void quantize(Dense layer, byte[] q, double[] scale, double[] bias) {
+        Matrix W = layer.getWeights(), b = layer.getBias();
+        double[] w = W.getFlatArray();
+        int in = layer.getInputSize(), out = layer.getOutputSize();
+
+        for (int c = 0; c < out; c++) {
+            double max = 0;
+            for (int k = 0; k < in; k++)
+                max = Math.max(max, Math.abs(w[W.getOffset() + k * W.getStride() + c]));
+            scale[c] = max / Q_MAX;
+        }
+
+        if (this.granularity == Granularity.PER_LAYER) {
+            double max = 0;
+            for (int c = 0; c < out; c++)
+                max = Math.max(max, scale[c]);
+            java.util.Arrays.fill(scale, max);
+        }
+
+        for (int c = 0; c < out; c++) {
+            double inv = scale[c] == 0 ? 0 : 1 / scale[c];
+            for (int k = 0; k < in; k++)
+                q[c * in + k] = (byte) Math.round(w[W.getOffset() + k * W.getStride() + c] * inv);
+            bias[c] = b.get(0, c);
+        }
+    }
+
+    /**
+     * Int8 inference on a single state, allocation free.
+     *
+     * @param x state, inputSize values.
+     * @param out receives the outputSize network outputs.
+     * @return out
+     */
+    public double[] foward(double[] x, double[] out) {
+        if (x.length != this.inputSize || out.length != this.outputSize)
+            throw new IllegalArgumentException("Array dimensions must agree.");
+
+        double[] a = x;
+        for (int l = 0; l < this.weights.length; l++) {
+            int in = this.sizes[l], n = this.sizes[l + 1];
+            double inputScale = quantizeInput(a, in);
+
+            byte[] w = this.weights[l];
+            double[] scale = this.scales[l], bias = this.biases[l];
+            double[] y = l == this.weights.length - 1 ? out : this.outputs[l];
+            boolean relu = this.activations[l] == Activation.RELU;
+
+            for (int c = 0; c < n; c++) {
+                int row = c * in, acc = 0;
+                for (int k = 0; k < in; k++)
+                    acc += this.quantizedInput[k] * w[row + k];
+
+                double v = acc * inputScale * scale[c] + bias[c];
+                y[c] = relu ? Math.max(0, v) : v;
+            }
+            a = y;
+        }
+        return out;
+    }
+
+    // Symmetric int8 quantization of a[0:n] into quantizedInput, returns the scale.
+    private double quantizeInput(double[] a, int n) {
+        double max = 0;
+        for (int k = 0; k < n; k++)
+            max = Math.max(max, Math.abs(a[k]));
+
+        // |a[k] * inv| <= 127, so rounding half away from zero is a cast.
+        double scale = max / Q_MAX, inv = max == 0 ? 0 : Q_MAX / max;
+        for (int k = 0; k < n; k++) {
+            double v = a[k] * inv;
+            this.quantizedInput[k] = (byte) (int) (v < 0 ? v - 0.5 : v + 0.5);
+        }
+        return scale;
+    }
+
+    /**
+     * Largest absolute difference between this network's outputs and the
+     * double precision {@link NNetwork#foward(double[], double[])} of
+     * reference, over every row of states.
+     */
+    public double maxError(NNetwork reference, Matrix states) {
+        if (states.getColumnDimension() != this.inputSize)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        double[] x = new double[this.inputSize];
+        double[] expected = new double[this.outputSize], actual = new double[this.outputSize];
+
+        double error = 0;
+        for (int i = 0; i < states.getRowDimension(); i++) {
+            for (int k = 0; k < this.inputSize; k++)
+                x[k] = states.get(i, k);
+
+            reference.foward(x, expected);
+            foward(x, actual);
+            for (int c = 0; c < this.outputSize; c++)
+                error = Math.max(error, Math.abs(expected[c] - actual[c]));
+        }
+        return error;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+}
@@ -0,0 +1,73 @@
+package com.marquee.ai.nn;
+
+import jama.*;
+
+/**
+ * Stochastic gradient descent with classical momentum:
+ * v = μv - lr*g, w = w + v.
+ */
+public class SGD implements Optimizer {
+
+    private final double learningRate;
+    private final double μ;
+
+    private double[][] velocity;
+    private float[][] floatVelocity;
+
+    public SGD(double learningRate, double μ) {
+        this.learningRate = learningRate;
+        this.μ = μ;
+    }
+
+    @Override
+    public void step(Matrix[] weights, Matrix[] gradients) {
+        if (this.velocity == null) {
+            this.velocity = new double[weights.length][];
+            for (int l = 0; l < weights.length; l++)
+                this.velocity[l] = new double[weights[l].getRowDimension() * weights[l].getColumnDimension()];
+        }
+
+        for (int l = 0; l < weights.length; l++) {
+            Matrix W = weights[l], G = gradients[l];
+            double[] w = W.getFlatArray(), g = G.getFlatArray(), v = this.velocity[l];
+            int m = W.getRowDimension(), n = W.getColumnDimension();
+
+            for (int i = 0; i < m; i++) {
+                int wi = W.getOffset() + i * W.getStride();
+                int gi = G.getOffset() + i * G.getStride();
+                int vi = i * n;
+                for (int j = 0; j < n; j++) {
+                    v[vi + j] = this.μ * v[vi + j] - this.learningRate * g[gi + j];
+                    w[wi + j] += v[vi + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void step(FloatMatrix[] weights, FloatMatrix[] gradients) {
+        if (this.floatVelocity == null) {
+            this.floatVelocity = new float[weights.length][];
+            for (int l = 0; l < weights.length; l++)
+                this.floatVelocity[l] = new float[weights[l].getRowDimension() * weights[l].getColumnDimension()];
+        }
+
+        float μ = (float) this.μ, learningRate = (float) this.learningRate;
+
+        for (int l = 0; l < weights.length; l++) {
+            FloatMatrix W = weights[l], G = gradients[l];
+            float[] w = W.getFlatArray(), g = G.getFlatArray(), v = this.floatVelocity[l];
+            int m = W.getRowDimension(), n = W.getColumnDimension();
+
+            for (int i = 0; i < m; i++) {
+                int wi = W.getOffset() + i * W.getStride();
+                int gi = G.getOffset() + i * G.getStride();
+                int vi = i * n;
+                for (int j = 0; j < n; j++) {
+                    v[vi + j] = μ * v[vi + j] - learningRate * g[gi + j];
+                    w[wi + j] += v[vi + j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.marquee.robot;
+
+import jama.*;
+import robocode.*;
+
+/**
+ * Turns the robot's pose and the Robocode events it receives into a fixed
+ * state vector. Events write their slots as they arrive and
+ * {@link #update(AdvancedRobot)} refreshes the pose once per tick, all in a
+ * preallocated array. Angles are encoded as sine/cosine pairs and every other
+ * value is scaled to roughly [0, 1] or [-1, 1].
+ */
+public class FeatureEncoder {
+
+    public static final int SIZE = 16;
+
+    private static final int X = 0, Y = 1, HEADING = 2, VELOCITY = 4, ENERGY = 5, GUN_HEAT = 6;
+    private static final int ENEMY_BEARING = 7, ENEMY_DISTANCE = 9, ENEMY_HEADING = 10,
+            ENEMY_VELOCITY = 12, ENEMY_ENERGY = 13, SCAN_RECENCY = 14, HIT_RECENCY = 15;
+
+    // Ticks for the recency features to decay by a factor of e.
+    private static final double DECAY = 10;
+    private static final double MAX_GUN_HEAT = 1 + 3.0 / 5;
+
+    private final double[] state = new double[SIZE];
+
+    private double diagonal = 1;
+    private long lastScan = Long.MIN_VALUE;
+    private long lastHit = Long.MIN_VALUE;
+    private double enemyBearing;
+
+    /**
+     * Refreshes the robot's own pose and the recency features. Called once
+     * per tick before encoding.
+     */
+    public void update(AdvancedRobot self) {
+        double width = self.getBattleFieldWidth(), height = self.getBattleFieldHeight();
+        this.diagonal = Math.sqrt(width * width + height * height);
+
+        this.state[X] = self.getX() / width;
+        this.state[Y] = self.getY() / height;
+        angle(HEADING, self.getHeadingRadians());
+        this.state[VELOCITY] = self.getVelocity() / Rules.MAX_VELOCITY;
+        this.state[ENERGY] = self.getEnergy() / 100;
+        this.state[GUN_HEAT] = self.getGunHeat() / MAX_GUN_HEAT;
+
+        long time = self.getTime();
+        this.state[SCAN_RECENCY] = recency(time, this.lastScan);
+        this.state[HIT_RECENCY] = recency(time, this.lastHit);
+    }
+
+    public void onScannedRobot(ScannedRobotEvent event, AdvancedRobot self) {
+        this.enemyBearing = self.getHeadingRadians() + event.getBearingRadians();
+        this.lastScan = self.getTime();
+
+        angle(ENEMY_BEARING, event.getBearingRadians());
+        this.state[ENEMY_DISTANCE] = event.getDistance() / this.diagonal;
+        angle(ENEMY_HEADING, event.getHeadingRadians() - self.getHeadingRadians());
+        this.state[ENEMY_VELOCITY] = event.getVelocity() / Rules.MAX_VELOCITY;
+        this.state[ENEMY_ENERGY] = event.getEnergy() / 100;
+    }
+
+    public void onHitByBullet(HitByBulletEvent event, AdvancedRobot self) {
+        this.lastHit = self.getTime();
+    }
+
+    /**
+     * Absolute bearing, in radians, of the last scanned enemy.
+     */
+    public double getEnemyBearing() {
+        return this.enemyBearing;
+    }
+
+    /**
+     * Copies the current state into x, e.g. a replay or inference buffer.
+     */
+    public double[] encode(double[] x) {
+        System.arraycopy(this.state, 0, x, 0, SIZE);
+        return x;
+    }
+
+    /**
+     * Copies the current state into a 1 x SIZE network input.
+     */
+    public Matrix encode(Matrix x) {
+        if (x.getRowDimension() != 1 || x.getColumnDimension() != SIZE)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        System.arraycopy(this.state, 0, x.getFlatArray(), x.getOffset(), SIZE);
+        return x;
+    }
+
+    /**
+     * Forgets everything learned from events, for the start of a round.
+     */
+    public void reset() {
+        java.util.Arrays.fill(this.state, 0);
+        this.lastScan = Long.MIN_VALUE;
+        this.lastHit = Long.MIN_VALUE;
+    }
+
+    private void angle(int slot, double radians) {
+        this.state[slot] = Math.sin(radians);
+        this.state[slot + 1] = Math.cos(radians);
+    }
+
+    private static double recency(long time, long last) {
+        return last == Long.MIN_VALUE ? 0 : Math.exp(-(time - last) / DECAY);
+    }
+}
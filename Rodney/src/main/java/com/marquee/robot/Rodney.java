@@ -1,12 +1,246 @@
 package com.marquee.robot;
 
+import com.marquee.ai.*;
+import com.marquee.ai.nn.*;
+import com.marquee.robot.TickProfiler.Stage;
+import java.io.*;
+import java.util.*;
 import robocode.*;
+import robocode.util.*;
 
 public class Rodney extends AdvancedRobot {
 
+    private static final int STATE_SIZE = FeatureEncoder.SIZE;
+    private static final int ACTIONS = 6;
+    private static final double τ = 0.5;
+
+    // Static, so they live for the whole battle while Robocode re-creates the
+    // robot every round.
+    private static final NNetwork network = new NNetwork(STATE_SIZE, ACTIONS, 32, 2, Activation.IDENTITY);
+    private static final ArrayReplayMemory memory = new ArrayReplayMemory(100000, STATE_SIZE, 42);
+    private static final Learner learner = new Learner(network, memory, new Adam(1e-3), 32, 0.99, 0.01, 100);
+    private static final TickProfiler profiler = new TickProfiler();
+    private static final Random rnd = new Random();
+
+    // Transitions are logged for BattleRunner only when it left this file in
+    // the data directory, since logs quickly outgrow the default data quota.
+    private static final String RECORD_MARKER = "record";
+
+    // The most recent transitions are kept from one battle to the next. At
+    // most about 130 bytes each before deflate, well under the default 200KB
+    // data quota.
+    private static final String SNAPSHOT = "replay.snapshot";
+    private static final int SNAPSHOT_SIZE = 1000;
+
+    private final FeatureEncoder encoder = new FeatureEncoder();
+    private TransitionLog.Writer log;
+
+    private double[] state = new double[STATE_SIZE];
+    private double[] nextState = new double[STATE_SIZE];
+    private final double[] qValues = new double[ACTIONS];
+    private final double[] probs = new double[ACTIONS];
+
+    private int action;
+    private double reward;
+
+    // Whether state and action hold a step that has been acted on, and
+    // whether the episode has ended, after which nothing more is pushed.
+    private boolean hasPrevious;
+    private boolean done;
+
     @Override
     public void run() {
-        while (true)
-            out.println(getEnergy());
+        restoreSnapshot();
+        learner.start();
+        openLog();
+
+        setAdjustGunForRobotTurn(true);
+        setAdjustRadarForGunTurn(true);
+        setTurnRadarRightRadians(Double.POSITIVE_INFINITY);
+
+        this.hasPrevious = false;
+        this.done = false;
+
+        while (true) {
+            long start = System.nanoTime();
+
+            encode(this.nextState);
+            long t = profiler.record(Stage.FEATURES, start);
+
+            if (this.hasPrevious && !this.done)
+                push(false);
+            t = profiler.record(Stage.REPLAY, t);
+
+            learner.policy().foward(this.nextState, this.qValues);
+            t = profiler.record(Stage.INFERENCE, t);
+
+            this.action = Functions.boltzmann(this.qValues, τ, this.probs, rnd);
+            profiler.record(Stage.ACTION, t);
+
+            double[] swap = this.state;
+            this.state = this.nextState;
+            this.nextState = swap;
+            this.reward = 0;
+            this.hasPrevious = true;
+
+            act(this.action);
+            profiler.record(Stage.TICK, start);
+            execute();
+        }
+    }
+
+    private void encode(double[] x) {
+        this.encoder.update(this);
+        this.encoder.encode(x);
+    }
+
+    private void push(boolean done) {
+        learner.push(this.state, this.action, this.reward, this.nextState, done);
+
+        if (this.log != null) {
+            try {
+                this.log.write(this.state, this.action, this.reward, this.nextState, done);
+            } catch (IOException e) {
+                out.println("Transition log disabled: " + e);
+                closeLog();
+            }
+        }
+    }
+
+    // Robocode loads the robot classes afresh for every battle, so the memory
+    // starts empty and is refilled from the previous battle's snapshot.
+    private void restoreSnapshot() {
+        File file = getDataFile(SNAPSHOT);
+        if (memory.len() > 0 || !file.exists())
+            return;
+
+        try (InputStream in = new FileInputStream(file)) {
+            out.println("Restored " + ReplaySnapshot.load(memory, in) + " transitions");
+        } catch (IOException e) {
+            out.println("Replay snapshot not restored: " + e);
+        }
+    }
+
+    private void saveSnapshot() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            synchronized (memory) {
+                ReplaySnapshot.save(memory, bytes, SNAPSHOT_SIZE);
+            }
+
+            // The previous snapshot is overwritten, so its bytes are reusable.
+            File file = getDataFile(SNAPSHOT);
+            if (bytes.size() > getDataQuotaAvailable() + file.length()) {
+                out.println("Replay snapshot skipped, " + bytes.size() + " bytes exceed the data quota");
+                return;
+            }
+            try (OutputStream snapshot = new RobocodeFileOutputStream(file)) {
+                bytes.writeTo(snapshot);
+            }
+        } catch (IOException e) {
+            out.println("Replay snapshot not saved: " + e);
+        }
+    }
+
+    private void openLog() {
+        if (!getDataFile(RECORD_MARKER).exists())
+            return;
+
+        try {
+            String name = "transitions-" + System.nanoTime() + ".log";
+            this.log = new TransitionLog.Writer(new RobocodeFileOutputStream(getDataFile(name)), STATE_SIZE);
+        } catch (IOException e) {
+            out.println("Transition log disabled: " + e);
+        }
+    }
+
+    private void closeLog() {
+        if (this.log == null)
+            return;
+
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            out.println("Could not close the transition log: " + e);
+        }
+        this.log = null;
+    }
+
+    private void act(int action) {
+        setTurnGunRightRadians(Utils.normalRelativeAngle(
+                this.encoder.getEnemyBearing() - getGunHeadingRadians()));
+
+        switch (action) {
+            case 0:
+                setAhead(100);
+                break;
+            case 1:
+                setBack(100);
+                break;
+            case 2:
+                setTurnLeft(45);
+                break;
+            case 3:
+                setTurnRight(45);
+                break;
+            case 4:
+                setFire(1);
+                break;
+            default:
+                setFire(3);
+        }
+    }
+
+    private void terminal(double reward) {
+        if (this.hasPrevious && !this.done) {
+            encode(this.nextState);
+            this.reward += reward;
+            push(true);
+        }
+        this.done = true;
+        closeLog();
+    }
+
+    @Override
+    public void onScannedRobot(ScannedRobotEvent event) {
+        this.encoder.onScannedRobot(event, this);
+    }
+
+    @Override
+    public void onBulletHit(BulletHitEvent event) {
+        this.reward += 1;
+    }
+
+    @Override
+    public void onHitByBullet(HitByBulletEvent event) {
+        this.encoder.onHitByBullet(event, this);
+        this.reward -= 1;
+    }
+
+    @Override
+    public void onDeath(DeathEvent event) {
+        terminal(-10);
+    }
+
+    @Override
+    public void onWin(WinEvent event) {
+        terminal(10);
+    }
+
+    @Override
+    public void onSkippedTurn(SkippedTurnEvent event) {
+        profiler.skippedTurn();
+    }
+
+    @Override
+    public void onRoundEnded(RoundEndedEvent event) {
+        closeLog();
+        profiler.print(out, "Tick profile after round " + (event.getRound() + 1));
+    }
+
+    @Override
+    public void onBattleEnded(BattleEndedEvent event) {
+        saveSnapshot();
+        profiler.print(out, "Tick profile for the battle");
     }
 }
@@ -0,0 +1,126 @@
+package com.marquee.robot;
+
+import java.io.*;
+
+/**
+ * Low-overhead per-tick timing of the robot loop. Every stage records
+ * System.nanoTime deltas into a log-linear histogram (HDR style: a power of
+ * two range split into SUB_BUCKETS linear buckets), so recording is a couple
+ * of shifts and an increment and never allocates.
+ */
+public class TickProfiler {
+
+    public enum Stage {
+        FEATURES, INFERENCE, ACTION, REPLAY, TICK
+    }
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Enough ranges for ~68 seconds in nanoseconds.
+    private static final int RANGES = 37 - SUB_BITS;
+
+    private final long[][] counts;
+    private final long[] totals;
+    private final long[] maxima;
+    private long skippedTurns;
+
+    public TickProfiler() {
+        int stages = Stage.values().length;
+        this.counts = new long[stages][(RANGES + 1) * SUB_BUCKETS];
+        this.totals = new long[stages];
+        this.maxima = new long[stages];
+    }
+
+    /**
+     * Records the time elapsed since start, a System.nanoTime() value, and
+     * returns the current time so stages can be chained.
+     */
+    public long record(Stage stage, long start) {
+        long now = System.nanoTime();
+        long nanos = Math.max(0, now - start);
+        int s = stage.ordinal();
+
+        this.counts[s][bucket(nanos)]++;
+        this.totals[s] += nanos;
+        if (nanos > this.maxima[s])
+            this.maxima[s] = nanos;
+        return now;
+    }
+
+    public void skippedTurn() {
+        this.skippedTurns++;
+    }
+
+    public long getSkippedTurns() {
+        return this.skippedTurns;
+    }
+
+    public void reset() {
+        for (long[] c : this.counts)
+            java.util.Arrays.fill(c, 0);
+        java.util.Arrays.fill(this.totals, 0);
+        java.util.Arrays.fill(this.maxima, 0);
+        this.skippedTurns = 0;
+    }
+
+    /**
+     * Upper bound, in nanoseconds, of the bucket holding the given percentile
+     * of the stage's samples.
+     */
+    public long percentile(Stage stage, double percentile) {
+        long[] c = this.counts[stage.ordinal()];
+        long total = 0;
+        for (long n : c)
+            total += n;
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int b = 0; b < c.length; b++) {
+            seen += c[b];
+            if (seen >= Math.max(1, rank))
+                return Math.min(upperBound(b), this.maxima[stage.ordinal()]);
+        }
+        return this.maxima[stage.ordinal()];
+    }
+
+    public void print(PrintStream out, String title) {
+        out.println(title + ", skipped turns: " + this.skippedTurns);
+        out.println(String.format("%-10s %8s %10s %10s %10s %10s %10s",
+                "stage", "ticks", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+
+        for (Stage stage : Stage.values()) {
+            int s = stage.ordinal();
+            long n = 0;
+            for (long c : this.counts[s])
+                n += c;
+            if (n == 0)
+                continue;
+
+            out.println(String.format("%-10s %8d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                    stage, n, this.totals[s] / 1e3 / n,
+                    percentile(stage, 50) / 1e3, percentile(stage, 99) / 1e3,
+                    percentile(stage, 99.9) / 1e3, this.maxima[s] / 1e3));
+        }
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+
+        int range = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS + 1;
+        if (range > RANGES)
+            return (RANGES + 1) * SUB_BUCKETS - 1;
+
+        int sub = (int) (nanos >>> (range - 1)) & (SUB_BUCKETS - 1);
+        return range * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        int range = bucket / SUB_BUCKETS, sub = bucket % SUB_BUCKETS;
+        if (range == 0)
+            return sub;
+        return ((long) (SUB_BUCKETS + sub + 1) << (range - 1)) - 1;
+    }
+}
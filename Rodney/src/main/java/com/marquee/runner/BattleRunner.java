@@ -0,0 +1,279 @@
+package com.marquee.runner;
+
+import com.marquee.ai.*;
+import com.marquee.robot.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import robocode.control.*;
+import robocode.control.events.*;
+
+/**
+ * Runs Robocode battles back-to-back without a GUI and collects the
+ * transitions Rodney logs into its data directory into a shared
+ * {@link MappedReplayMemory}.
+ *
+ * Robocode keeps per-JVM global state, so parallel engines run as worker
+ * processes, each on its own Robocode installation. Workers stream their
+ * transitions to the parent over stdout as a {@link TransitionLog}, and the
+ * parent is the only writer of the replay file.
+ *
+ * Usage: BattleRunner -home dir[,dir...] [-robots list] [-battles n]
+ * [-rounds n] [-out file] [-capacity n]
+ *
+ * Logs go through the robot data quota, so raise
+ * robocode.robot.filesystem.quota in each installation's
+ * config/robocode.properties for long battles.
+ */
+public class BattleRunner {
+
+    private static final String ROBOT = "com.marquee.robot.Rodney*";
+    private static final String DATA_DIR = "robots/.data/com/marquee/robot/Rodney.data";
+    // Tells Rodney to log its transitions, see Rodney.RECORD_MARKER.
+    private static final String RECORD_MARKER = "record";
+
+    private final Map<String, String> options;
+
+    private final AtomicLong battles = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+    private MappedReplayMemory store;
+
+    private BattleRunner(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-"))
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            boolean flag = i + 1 == args.length || args[i + 1].startsWith("-");
+            options.put(args[i].substring(1), flag ? "" : args[++i]);
+        }
+
+        if (!options.containsKey("home"))
+            throw new IllegalArgumentException("Missing -home");
+
+        BattleRunner runner = new BattleRunner(options);
+        if (options.containsKey("worker"))
+            runner.work();
+        else
+            runner.run();
+    }
+
+    private String option(String name, String fallback) {
+        return this.options.getOrDefault(name, fallback);
+    }
+
+    /**
+     * Parent process: runs the battles in-process for a single installation,
+     * otherwise spreads them over one worker per installation.
+     */
+    private void run() throws Exception {
+        String[] homes = option("home", "").split(",");
+        int battleCount = Integer.parseInt(option("battles", "100"));
+        File out = new File(option("out", "replay.bin"));
+        int capacity = Integer.parseInt(option("capacity", "1000000"));
+
+        // Opened before any battle runs, so a file of another shape fails the
+        // run up front rather than inside a worker's reader.
+        this.store = new MappedReplayMemory(out, capacity, FeatureEncoder.SIZE, System.nanoTime());
+
+        TransitionLog.Sink sink = new TransitionLog.Sink() {
+            @Override
+            public void push(double[] state, int action, double reward, double[] nextState, boolean done) {
+                synchronized (BattleRunner.this) {
+                    store.push(state, action, reward, nextState, done);
+                }
+                transitions.incrementAndGet();
+            }
+
+            @Override
+            public void battleCompleted() {
+                battles.incrementAndGet();
+            }
+        };
+
+        long start = System.nanoTime();
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(10000);
+                    report(start);
+                }
+            } catch (InterruptedException e) {
+                // finished
+            }
+        }, "reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        try {
+            if (homes.length == 1)
+                runBattles(new File(homes[0]), battleCount, sink);
+            else
+                runWorkers(homes, battleCount, sink);
+        } finally {
+            reporter.interrupt();
+            this.store.close();
+        }
+        report(start);
+    }
+
+    /**
+     * Spreads the battles over one worker process per installation. If any
+     * worker's stream fails, every worker is killed, since a child nobody
+     * reads from would block on a full pipe, and the run fails.
+     */
+    private void runWorkers(String[] homes, int battleCount, TransitionLog.Sink sink) throws Exception {
+        List<Process> workers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        try {
+            for (int w = 0; w < homes.length; w++) {
+                int share = battleCount / homes.length + (w < battleCount % homes.length ? 1 : 0);
+                Process process = new ProcessBuilder(
+                        new File(System.getProperty("java.home"), "bin/java").getPath(),
+                        "-cp", System.getProperty("java.class.path"),
+                        BattleRunner.class.getName(), "-worker",
+                        "-home", homes[w],
+                        "-robots", option("robots", ROBOT + ",sample.SpinBot"),
+                        "-rounds", option("rounds", "10"),
+                        "-battles", Integer.toString(share))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                workers.add(process);
+            }
+
+            for (int w = 0; w < workers.size(); w++) {
+                Process process = workers.get(w);
+                Thread reader = new Thread(() -> {
+                    try {
+                        TransitionLog.read(process.getInputStream(), sink);
+                    } catch (IOException | RuntimeException e) {
+                        if (failure.compareAndSet(null, e))
+                            System.err.println("Worker stream failed: " + e);
+                        for (Process worker : workers)
+                            worker.destroyForcibly();
+                    }
+                }, "worker-" + w);
+                reader.start();
+                readers.add(reader);
+            }
+
+            for (Thread reader : readers)
+                reader.join();
+            for (Process process : workers) {
+                int status = process.waitFor();
+                if (status != 0)
+                    failure.compareAndSet(null, new IOException("Worker exited with status " + status));
+            }
+        } finally {
+            for (Process process : workers)
+                if (process.isAlive())
+                    process.destroyForcibly();
+        }
+
+        if (failure.get() != null)
+            throw new IOException("Worker failed.", failure.get());
+    }
+
+    /**
+     * Worker process: runs its battles and streams the transitions to stdout.
+     * Anything else Robocode prints is sent to stderr instead.
+     */
+    private void work() throws IOException {
+        OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+
+        TransitionLog.Writer[] writer = new TransitionLog.Writer[1];
+        runBattles(new File(option("home", "")), Integer.parseInt(option("battles", "100")),
+                new TransitionLog.Sink() {
+            @Override
+            public void push(double[] state, int action, double reward, double[] nextState, boolean done) {
+                try {
+                    if (writer[0] == null)
+                        writer[0] = new TransitionLog.Writer(stdout, state.length);
+                    writer[0].write(state, action, reward, nextState, done);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void battleCompleted() {
+                try {
+                    if (writer[0] != null) {
+                        writer[0].battleCompleted();
+                        writer[0].flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+
+        if (writer[0] != null)
+            writer[0].close();
+    }
+
+    private void runBattles(File home, int count, TransitionLog.Sink sink) throws IOException {
+        RobocodeEngine.setLogMessagesEnabled(false);
+        RobocodeEngine engine = new RobocodeEngine(home);
+        engine.setVisible(false);
+        engine.addBattleListener(new BattleAdaptor() {
+            @Override
+            public void onBattleError(BattleErrorEvent event) {
+                System.err.println("Battle error: " + event.getError());
+            }
+        });
+
+        RobotSpecification[] robots = engine.getLocalRepository(option("robots", ROBOT + ",sample.SpinBot"));
+        BattleSpecification battle = new BattleSpecification(
+                Integer.parseInt(option("rounds", "10")), new BattlefieldSpecification(800, 600), robots);
+
+        File dataDir = new File(home, DATA_DIR);
+        if (!dataDir.isDirectory() && !dataDir.mkdirs())
+            throw new IOException("Cannot create " + dataDir);
+        new FileOutputStream(new File(dataDir, RECORD_MARKER)).close();
+
+        try {
+            for (int b = 0; b < count; b++) {
+                engine.runBattle(battle, true);
+                harvest(dataDir, sink);
+                sink.battleCompleted();
+            }
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * Moves every transition log the robots left in their data directory into
+     * the sink. A log cut short by the end of the battle keeps its complete
+     * entries.
+     */
+    private static void harvest(File dataDir, TransitionLog.Sink sink) throws IOException {
+        File[] logs = dataDir.listFiles((dir, name) -> name.endsWith(".log"));
+        if (logs == null)
+            return;
+
+        for (File log : logs) {
+            try (InputStream in = new FileInputStream(log)) {
+                TransitionLog.read(in, sink);
+            } catch (EOFException e) {
+                // truncated tail, the complete transitions were delivered
+            }
+            if (!log.delete())
+                System.err.println("Could not delete " + log);
+        }
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d battles (%.2f/s), %d transitions (%.0f/s)%n",
+                this.battles.get(), this.battles.get() / seconds,
+                this.transitions.get(), this.transitions.get() / seconds);
+    }
+}
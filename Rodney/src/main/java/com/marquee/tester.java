@@ -1,13 +1,453 @@
 package com.marquee;
 
+import com.marquee.ai.*;
 import com.marquee.ai.nn.*;
 import jama.*;
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 public class tester {
 
+    private static boolean failed;
+
     public static void main(String[] args) {
         NNetwork test = new NNetwork(4, 4, 3, 2);
 
         test.foward(Matrix.random(1, 4)).print(1, 4);
+
+        // int8 inference against the double precision network, relative to
+        // the largest output.
+        NNetwork network = new NNetwork(16, 6, 32, 2, Activation.IDENTITY);
+        Matrix states = Matrix.random(1000, 16);
+
+        Matrix outputs = network.fowardBatch(states);
+        double range = 0;
+        for (int i = 0; i < outputs.getRowDimension(); i++)
+            for (int j = 0; j < outputs.getColumnDimension(); j++)
+                range = Math.max(range, Math.abs(outputs.get(i, j)));
+
+        for (QuantizedNNetwork.Granularity granularity : QuantizedNNetwork.Granularity.values()) {
+            double error = new QuantizedNNetwork(network, granularity).maxError(network, states) / range;
+            check(granularity + " relative error " + error, error <= 0.02);
+        }
+
+        floatCheck(network, states, range);
+
+        checkpointCheck(Matrix.random(200, 16));
+
+        replayStress(4, 2, 200000);
+
+        samplerCheck();
+
+        gradientCheck(new NNetwork(5, 3, 8, 2, Activation.IDENTITY), Matrix.random(4, 5));
+
+        parallelCheck(Matrix.random(97, 130), Matrix.random(130, 71));
+
+        kernelCheck(Matrix.random(33, 130), Matrix.random(130, 259));
+
+        expressionCheck(7, 300);
+
+        if (failed)
+            System.exit(1);
+    }
+
+    // Prints the outcome of a check, remembering failures for the exit code.
+    private static void check(String result, boolean ok) {
+        System.out.println(result + (ok ? " ok" : " FAILED"));
+        failed |= !ok;
+    }
+
+    /**
+     * Compares the gradients of {@link NNetwork#backward(Matrix)} with
+     * central finite differences of the loss sum(y .* r), for random r. The
+     * weights and gradients are reached through the optimizer interface.
+     */
+    static void gradientCheck(NNetwork network, Matrix x) {
+        final double h = 1e-6;
+        Matrix r = Matrix.random(x.getRowDimension(), network.getOutputSize());
+
+        Matrix[][] captured = new Matrix[2][];
+        network.fowardBatch(x);
+        network.backward(r);
+        network.step(new Optimizer() {
+            @Override
+            public void step(Matrix[] weights, Matrix[] gradients) {
+                captured[0] = weights;
+                captured[1] = gradients;
+            }
+        });
+
+        double error = 0;
+        for (int p = 0; p < captured[0].length; p++) {
+            Matrix W = captured[0][p], G = captured[1][p].copy();
+            for (int i = 0; i < W.getRowDimension(); i++) {
+                for (int j = 0; j < W.getColumnDimension(); j++) {
+                    double w = W.get(i, j);
+                    W.set(i, j, w + h);
+                    double plus = innerProduct(network.fowardBatch(x), r);
+                    W.set(i, j, w - h);
+                    double minus = innerProduct(network.fowardBatch(x), r);
+                    W.set(i, j, w);
+
+                    double numeric = (plus - minus) / (2 * h);
+                    error = Math.max(error, Math.abs(numeric - G.get(i, j)) / Math.max(1, Math.abs(numeric)));
+                }
+            }
+        }
+        check("gradient check relative error " + error, error <= 1e-6);
+    }
+
+    /**
+     * Compares the single-precision copy of a network with the network on
+     * every row of states, relative to range, the largest output.
+     */
+    static void floatCheck(NNetwork network, Matrix states, double range) {
+        FloatNNetwork single = new FloatNNetwork(network);
+        int n = network.getInputSize();
+        double[] x = new double[n], expected = new double[network.getOutputSize()];
+        float[] xf = new float[n], actual = new float[network.getOutputSize()];
+
+        double error = 0;
+        for (int i = 0; i < states.getRowDimension(); i++) {
+            for (int k = 0; k < n; k++) {
+                x[k] = states.get(i, k);
+                xf[k] = (float) x[k];
+            }
+            network.foward(x, expected);
+            single.foward(xf, actual);
+            for (int c = 0; c < expected.length; c++)
+                error = Math.max(error, Math.abs(expected[c] - actual[c]));
+        }
+        error /= range;
+        check("float relative error " + error, error <= 1e-6);
+    }
+
+    /**
+     * Saves and reloads a trained network in every precision, with and
+     * without deflate, and compares the outputs relative to the largest one.
+     * Also loads a version 1 file and checks that corrupt headers are
+     * rejected with an IOException.
+     */
+    static void checkpointCheck(Matrix states) {
+        NNetwork network = new NNetwork(16, 6, 32, 2, Activation.IDENTITY);
+        // One small SGD step on a zero-mean gradient, so the biases are not
+        // all zero while the ReLUs stay alive.
+        int rows = states.getRowDimension();
+        network.fowardBatch(states);
+        network.backward(Matrix.random(rows, 6).minus(new Matrix(rows, 6, 0.5)));
+        network.step(new SGD(1e-3, 0));
+
+        Matrix expected = network.fowardBatch(states).copy();
+        double range = maxDifference(expected, new Matrix(expected.getRowDimension(), expected.getColumnDimension()));
+        double[] tolerances = {0, 1e-6, 5e-3, 0.02};
+
+        try {
+            File file = File.createTempFile("checkpoint", ".bin");
+            file.deleteOnExit();
+            for (Checkpoint.Precision precision : Checkpoint.Precision.values()) {
+                for (boolean compress : new boolean[]{false, true}) {
+                    Checkpoint.save(network, file, precision, compress);
+                    NNetwork loaded = Checkpoint.load(file);
+                    double error = maxDifference(expected, loaded.fowardBatch(states)) / range;
+                    check("checkpoint " + precision + (compress ? " deflated" : "") + " relative error " + error,
+                            error <= tolerances[precision.ordinal()] && loaded.getOutputActivation() == Activation.IDENTITY);
+                }
+            }
+
+            // A version 1 file loads as a ReLU output network with zero
+            // biases, which is what a new network has.
+            NNetwork relu = new NNetwork(16, 6, 32, 2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Checkpoint.save(relu, out, Checkpoint.Precision.FLOAT64, false);
+            NNetwork loaded = Checkpoint.load(new ByteArrayInputStream(version1(out.toByteArray(), 16, 32, 2, 6)));
+            double error = maxDifference(relu.fowardBatch(states).copy(), loaded.fowardBatch(states));
+            check("checkpoint version 1 difference " + error, error == 0 && loaded.getOutputActivation() == Activation.RELU);
+
+            byte[] bytes = out.toByteArray();
+            check("checkpoint corrupt headers rejected", rejected(bytes, 20, 0) && rejected(bytes, 20, 1 << 30)
+                    && rejected(bytes, 8, -5) && rejected(java.util.Arrays.copyOf(bytes, bytes.length - 1), 0, 0x594E4452));
+        } catch (IOException e) {
+            check("checkpoint " + e, false);
+        }
+    }
+
+    // Whether loading bytes with the int at offset replaced by value fails
+    // with an IOException and nothing else.
+    private static boolean rejected(byte[] bytes, int offset, int value) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(offset, value);
+        try {
+            Checkpoint.load(buffer);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // Rewrites an uncompressed FLOAT64 version 2 checkpoint in the version 1
+    // layout: no activation field and no biases.
+    private static byte[] version1(byte[] v2, int inputSize, int hiddenSize, int hiddenNum, int outputSize) {
+        ByteBuffer in = ByteBuffer.wrap(v2).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = ByteBuffer.allocate(v2.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        out.putInt(in.getInt()).putShort((short) 1);
+        in.getShort();
+        out.put(in.get()).put(in.get());
+        for (int i = 0; i < 4; i++)
+            out.putInt(in.getInt());
+        in.getInt();
+        in.getInt();
+        int lengthAt = out.position();
+        out.putInt(0);
+
+        int[] sizes = new int[hiddenNum + 2];
+        java.util.Arrays.fill(sizes, hiddenSize);
+        sizes[0] = inputSize;
+        sizes[hiddenNum + 1] = outputSize;
+        for (int l = 0; l <= hiddenNum; l++) {
+            for (int k = 0; k < sizes[l] * sizes[l + 1]; k++)
+                out.putDouble(in.getDouble());
+            in.position(in.position() + 8 * sizes[l + 1]);
+        }
+
+        out.putInt(lengthAt, out.position() - lengthAt - 4);
+        return java.util.Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Checks that a product split over a 4-thread pool gives exactly the
+     * serial result, then restores the defaults.
+     */
+    static void parallelCheck(Matrix A, Matrix B) {
+        Matrix.setParallelThreshold(Long.MAX_VALUE);
+        Matrix serial = A.times(B);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Matrix.setParallelPool(pool);
+        Matrix.setParallelThreshold(1);
+        Matrix parallel = A.times(B);
+
+        Matrix.setParallelThreshold(1L << 21);
+        Matrix.setParallelPool(ForkJoinPool.commonPool());
+        pool.shutdown();
+
+        double error = maxDifference(serial, parallel);
+        check("parallel product difference " + error, error == 0);
+    }
+
+    /**
+     * Compares the product and element-wise operations, which run through
+     * jama.Kernels, with plain loops. The product may differ by fma rounding
+     * when the kernels are vectorized.
+     */
+    static void kernelCheck(Matrix A, Matrix B) {
+        int m = A.getRowDimension(), n = B.getColumnDimension(), p = A.getColumnDimension();
+        Matrix product = new Matrix(m, n), sum = new Matrix(m, p), elementProduct = new Matrix(m, p);
+        Matrix C = Matrix.random(m, p);
+        double max = 0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double s = 0;
+                for (int k = 0; k < p; k++)
+                    s += A.get(i, k) * B.get(k, j);
+                product.set(i, j, s);
+                max = Math.max(max, Math.abs(s));
+            }
+            for (int k = 0; k < p; k++) {
+                sum.set(i, k, A.get(i, k) + C.get(i, k));
+                elementProduct.set(i, k, A.get(i, k) * C.get(i, k));
+            }
+        }
+
+        double error = maxDifference(A.times(B), product) / max;
+        check((Kernels.isVectorized() ? "vector" : "scalar") + " kernel relative error " + error, error <= 1e-12);
+        check("element-wise kernels", maxDifference(A.plus(C), sum) == 0
+                && maxDifference(A.arrayTimes(C), elementProduct) == 0);
+    }
+
+    /**
+     * Compares lazily fused expressions with the same chain of eager Matrix
+     * operations, on whole matrices and on views with an offset and a row
+     * stride, with n past one evaluation chunk, and with the destination
+     * aliasing an operand.
+     */
+    static void expressionCheck(int m, int n) {
+        Matrix a = Matrix.random(m, n), b = Matrix.random(m, n), c = Matrix.random(m, n).plus(new Matrix(m, n, 1));
+        double s = 0.75;
+
+        Matrix lazy = a.lazy().times(s).plus(b).arrayTimes(c).minus(a.lazy().uminus())
+                .arrayRightDivide(c).applyFunc(Math::sqrt).toMatrix();
+        Matrix eager = a.times(s).plus(b).arrayTimes(c).minus(a.uminus()).arrayRightDivide(c).applyFunc(Math::sqrt);
+        double error = maxDifference(lazy, eager);
+
+        // Views into larger matrices, read and written through offset and stride.
+        Matrix big = Matrix.random(m + 4, n + 9), out = new Matrix(m + 3, n + 5);
+        Matrix av = big.view(2, m + 1, 5, n + 4), bv = big.view(4, m + 3, 1, n), xv = out.view(1, m, 3, n + 2);
+        a.lazy().times(s).plus(av).arrayTimes(bv).into(xv);
+        error = Math.max(error, maxDifference(xv, a.times(s).plus(av).arrayTimes(bv)));
+        boolean untouched = out.get(0, 0) == 0 && out.get(m + 2, n + 4) == 0 && out.get(1, 2) == 0;
+
+        // Soft update in place, t = (1 - τ) t + τ w, through a view as well.
+        double τ = 0.01;
+        Matrix t = big.view(1, m, 2, n + 1), expected = t.times(1 - τ).plus(b.times(τ));
+        t.lazy().times(1 - τ).plus(b.lazy().times(τ)).into(t);
+        error = Math.max(error, maxDifference(t, expected));
+
+        boolean rejected;
+        try {
+            big.view(0, m - 1, 2, n + 1).lazy().plus(b).into(big.view(1, m, 2, n + 1));
+            rejected = false;
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+
+        check("lazy expression difference " + error, error == 0 && untouched);
+        check("lazy expression partial overlap rejected", rejected);
+    }
+
+    // max |a - b|
+    private static double maxDifference(Matrix a, Matrix b) {
+        double max = 0;
+        for (int i = 0; i < a.getRowDimension(); i++)
+            for (int j = 0; j < a.getColumnDimension(); j++)
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+        return max;
+    }
+
+    // sum(a .* b)
+    private static double innerProduct(Matrix a, Matrix b) {
+        double sum = 0;
+        for (int i = 0; i < a.getRowDimension(); i++)
+            for (int j = 0; j < a.getColumnDimension(); j++)
+                sum += a.get(i, j) * b.get(i, j);
+        return sum;
+    }
+
+    /**
+     * Checks that sampling without replacement gives distinct in-range
+     * indices across both generation wraparounds, and that both modes are
+     * uniform by a chi-square test.
+     */
+    static void samplerCheck() {
+        final int capacity = 64;
+        IndexSampler sampler = new IndexSampler(capacity, new java.util.Random(42));
+        int[] out = new int[capacity];
+
+        boolean distinct = true;
+        // The wraparounds are otherwise 2^31 and 2^32 calls away.
+        for (int start : new int[]{Integer.MAX_VALUE - 100, -100}) {
+            try {
+                java.lang.reflect.Field generation = IndexSampler.class.getDeclaredField("generation");
+                generation.setAccessible(true);
+                generation.setInt(sampler, start);
+            } catch (ReflectiveOperationException e) {
+                check("sampler " + e, false);
+                return;
+            }
+
+            for (int call = 0; call < 200; call++) {
+                int n = 1 + call % capacity, count = Math.min(n, 1 + call % 17);
+                sampler.withoutReplacement(n, out, count);
+
+                boolean[] seen = new boolean[n];
+                for (int i = 0; i < count && distinct; i++) {
+                    int t = out[i];
+                    distinct = t >= 0 && t < n && !seen[t];
+                    if (distinct)
+                        seen[t] = true;
+                }
+            }
+        }
+        check("sampler distinct indices across wraparound", distinct);
+
+        // 9 degrees of freedom, 27.9 is the 0.1% critical value.
+        final int n = 10, count = 3, draws = 100000;
+        for (boolean replacement : new boolean[]{false, true}) {
+            long[] hits = new long[n];
+            for (int d = 0; d < draws; d++) {
+                if (replacement)
+                    sampler.withReplacement(n, out, count);
+                else
+                    sampler.withoutReplacement(n, out, count);
+                for (int i = 0; i < count; i++)
+                    hits[out[i]]++;
+            }
+
+            double expected = (double) draws * count / n, χ2 = 0;
+            for (long h : hits)
+                χ2 += (h - expected) * (h - expected) / expected;
+            check("sampler " + (replacement ? "with" : "without") + " replacement chi-square " + χ2, χ2 < 27.9);
+        }
+    }
+
+    /**
+     * Producers push transitions whose every field is derived from one id
+     * into a small ring, so slots are overwritten constantly, while samplers
+     * check that every sampled transition is still self-consistent.
+     */
+    static void replayStress(int producers, int samplers, int pushes) {
+        final int stateSize = 8;
+        ConcurrentReplayMemory memory = new ConcurrentReplayMemory(1024, stateSize);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong sampled = new AtomicLong(), torn = new AtomicLong();
+
+        Thread[] threads = new Thread[producers + samplers];
+        for (int p = 0; p < producers; p++) {
+            final long base = p * 10000000L;
+            threads[p] = new Thread(() -> {
+                double[] s = new double[stateSize], ns = new double[stateSize];
+                for (long n = 0; n < pushes; n++) {
+                    double id = base + n;
+                    for (int k = 0; k < stateSize; k++) {
+                        s[k] = id + k;
+                        ns[k] = -id - k;
+                    }
+                    memory.push(s, (int) (n % 7), id, ns, n % 2 == 1);
+                }
+            });
+        }
+        for (int q = producers; q < threads.length; q++) {
+            threads[q] = new Thread(() -> {
+                Batch batch = new Batch(32, stateSize);
+                double[] s = batch.getStates().getFlatArray(), ns = batch.getNextStates().getFlatArray();
+                while (!done.get()) {
+                    if (memory.len() == 0)
+                        continue;
+                    memory.sample(batch);
+                    for (int i = 0; i < batch.size(); i++) {
+                        double id = batch.getRewards()[i];
+                        long n = (long) id % 10000000L;
+                        boolean ok = batch.getActions()[i] == n % 7 && batch.getDones()[i] == (n % 2 == 1);
+                        for (int k = 0; k < stateSize; k++)
+                            ok &= s[i * stateSize + k] == id + k && ns[i * stateSize + k] == -id - k;
+                        if (!ok)
+                            torn.incrementAndGet();
+                    }
+                    sampled.addAndGet(batch.size());
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        try {
+            for (int p = 0; p < producers; p++)
+                threads[p].join();
+            done.set(true);
+            for (int q = producers; q < threads.length; q++)
+                threads[q].join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            check("replay stress interrupted", false);
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        check(String.format("replay stress: %d pushed, %d sampled, %d torn in %.2fs",
+                memory.getPushed(), sampled.get(), torn.get(), seconds),
+                torn.get() == 0 && memory.getPushed() == (long) producers * pushes);
     }
 }
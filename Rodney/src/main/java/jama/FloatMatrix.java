@@ -0,0 +1,527 @@
+package jama;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Single-precision counterpart of {@link Matrix}, with the subset of its
+ * operations used by the neural network code. Elements live in a flat
+ * row-major float array with an offset and a row stride, exactly as in
+ * Matrix, which halves memory traffic for the same shapes.
+ */
+public class FloatMatrix implements Cloneable, java.io.Serializable {
+
+    /* ------------------------
+   Class variables
+ * ------------------------ */
+    /**
+     * Array for internal storage of elements, row-major. Element (i,j) lives
+     * at A[offset + i * stride + j].
+     *
+     * @serial internal array storage.
+     */
+    private final float[] A;
+
+    /**
+     * Offset of element (0,0) and distance between the starts of two
+     * consecutive rows in the storage array.
+     *
+     * @serial storage offset.
+     * @serial row stride.
+     */
+    private final int offset, stride;
+
+    /**
+     * Row and column dimensions.
+     *
+     * @serial row dimension.
+     * @serial column dimension.
+     */
+    private final int m, n;
+
+    /**
+     * Tile sizes used by the blocked multiplication kernel, twice as wide as
+     * Matrix's since the elements are half the size.
+     */
+    private static final int BLOCK_I = 32, BLOCK_K = 256, BLOCK_J = 512;
+
+    /* ------------------------
+   Constructors
+ * ------------------------ */
+    /**
+     * Construct an m-by-n matrix of zeros.
+     *
+     * @param m Number of rows.
+     * @param n Number of colums.
+     */
+    public FloatMatrix(int m, int n) {
+        this.m = m;
+        this.n = n;
+        this.offset = 0;
+        this.stride = n;
+        A = new float[m * n];
+    }
+
+    /**
+     * Construct a matrix quickly on top of an existing row-major array, without
+     * copying it.
+     *
+     * @param A Storage array.
+     * @param offset Index of element (0,0) in A.
+     * @param stride Distance between the starts of two consecutive rows.
+     * @param m Number of rows.
+     * @param n Number of colums.
+     * @exception IllegalArgumentException Storage too small for the shape.
+     */
+    public FloatMatrix(float[] A, int offset, int stride, int m, int n) {
+        if (offset < 0 || stride < n || (m > 0 && offset + (m - 1) * stride + n > A.length))
+            throw new IllegalArgumentException("Storage does not fit the matrix shape.");
+        this.A = A;
+        this.offset = offset;
+        this.stride = stride;
+        this.m = m;
+        this.n = n;
+    }
+
+    /**
+     * Construct a single-precision copy of a matrix.
+     *
+     * @param X double precision matrix.
+     */
+    public FloatMatrix(Matrix X) {
+        this(X.getRowDimension(), X.getColumnDimension());
+        double[] a = X.getFlatArray();
+        for (int i = 0; i < m; i++) {
+            int x = X.getOffset() + i * X.getStride();
+            for (int j = 0; j < n; j++)
+                A[i * n + j] = (float) a[x + j];
+        }
+    }
+
+    /* ------------------------
+   Public Methods
+ * ------------------------ */
+    /**
+     * Make a deep copy of a matrix
+     */
+    public FloatMatrix copy() {
+        FloatMatrix X = new FloatMatrix(m, n);
+        for (int i = 0; i < m; i++)
+            System.arraycopy(A, offset + i * stride, X.A, i * n, n);
+        return X;
+    }
+
+    /**
+     * Clone the FloatMatrix object.
+     */
+    @Override
+    public Object clone() {
+        return this.copy();
+    }
+
+    /**
+     * Make a double precision copy of the matrix.
+     *
+     * @return the same elements as a Matrix.
+     */
+    public Matrix toMatrix() {
+        Matrix X = new Matrix(m, n);
+        double[] c = X.getFlatArray();
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            for (int j = 0; j < n; j++)
+                c[i * n + j] = A[a + j];
+        }
+        return X;
+    }
+
+    /**
+     * Get a view of a submatrix. The view shares storage with this matrix.
+     * Like setMatrix, the final indices are inclusive.
+     *
+     * @param i0 Initial row index
+     * @param i1 Final row index
+     * @param j0 Initial column index
+     * @param j1 Final column index
+     * @return A(i0:i1,j0:j1)
+     * @exception ArrayIndexOutOfBoundsException Submatrix indices
+     */
+    public FloatMatrix view(int i0, int i1, int j0, int j1) {
+        if (i0 < 0 || i1 >= m || i0 > i1 + 1 || j0 < 0 || j1 >= n || j0 > j1 + 1)
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+        return new FloatMatrix(A, offset + i0 * stride + j0, stride, i1 - i0 + 1, j1 - j0 + 1);
+    }
+
+    /**
+     * Set a submatrix.
+     *
+     * @param i0 Initial row index
+     * @param i1 Final row index
+     * @param j0 Initial column index
+     * @param j1 Final column index
+     * @param X A(i0:i1,j0:j1)
+     * @exception ArrayIndexOutOfBoundsException Submatrix indices
+     */
+    public void setMatrix(int i0, int i1, int j0, int j1, FloatMatrix X) {
+        if (i0 < 0 || i1 >= m || j0 < 0 || j1 >= n
+                || X.m != i1 - i0 + 1 || X.n != j1 - j0 + 1)
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+        for (int i = i0; i <= i1; i++)
+            System.arraycopy(X.A, X.offset + (i - i0) * X.stride, A, offset + i * stride + j0, X.n);
+    }
+
+    /**
+     * Access the internal row-major storage array.
+     *
+     * @return Pointer to the storage array.
+     */
+    public float[] getFlatArray() {
+        return A;
+    }
+
+    /**
+     * Get the index of element (0,0) in the storage array.
+     *
+     * @return storage offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the distance between the starts of two consecutive rows in the
+     * storage array.
+     *
+     * @return row stride.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Get row dimension.
+     *
+     * @return m, the number of rows.
+     */
+    public int getRowDimension() {
+        return m;
+    }
+
+    /**
+     * Get column dimension.
+     *
+     * @return n, the number of columns.
+     */
+    public int getColumnDimension() {
+        return n;
+    }
+
+    /**
+     * Get a single element.
+     *
+     * @param i Row index.
+     * @param j Column index.
+     * @return A(i,j)
+     * @exception ArrayIndexOutOfBoundsException
+     */
+    public float get(int i, int j) {
+        checkIndex(i, j);
+        return A[offset + i * stride + j];
+    }
+
+    /**
+     * Set a single element.
+     *
+     * @param i Row index.
+     * @param j Column index.
+     * @param s A(i,j).
+     * @exception ArrayIndexOutOfBoundsException
+     */
+    public void set(int i, int j, float s) {
+        checkIndex(i, j);
+        A[offset + i * stride + j] = s;
+    }
+
+    /**
+     * A = A + B
+     *
+     * @param B another matrix
+     * @return A + B
+     */
+    public FloatMatrix plusEquals(FloatMatrix B) {
+        checkMatrixDimensions(B);
+        float[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = A[a + j] + BA[b + j];
+        }
+        return this;
+    }
+
+    /**
+     * A = A - B
+     *
+     * @param B another matrix
+     * @return A - B
+     */
+    public FloatMatrix minusEquals(FloatMatrix B) {
+        checkMatrixDimensions(B);
+        float[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = A[a + j] - BA[b + j];
+        }
+        return this;
+    }
+
+    /**
+     * Element-by-element multiplication in place, A = A.*B
+     *
+     * @param B another matrix
+     * @return A.*B
+     */
+    public FloatMatrix arrayTimesEquals(FloatMatrix B) {
+        checkMatrixDimensions(B);
+        float[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = A[a + j] * BA[b + j];
+        }
+        return this;
+    }
+
+    /**
+     * Multiply a matrix by a scalar in place, A = s*A
+     *
+     * @param s scalar
+     * @return replace A by s*A
+     */
+    public FloatMatrix timesEquals(float s) {
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = s * A[a + j];
+        }
+        return this;
+    }
+
+    /**
+     * Linear algebraic matrix multiplication, A * B
+     *
+     * @param B another matrix
+     * @return Matrix product, A * B
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public FloatMatrix times(FloatMatrix B) {
+        if (B.m != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        FloatMatrix X = new FloatMatrix(m, B.n);
+        multiply(this, B, X);
+        return X;
+    }
+
+    /**
+     * Linear algebraic matrix multiplication into an existing matrix, X = A * B
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public FloatMatrix timesInto(FloatMatrix B, FloatMatrix X) {
+        if (B.m != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        multiply(this, B, X);
+        return X;
+    }
+
+    /**
+     * Fused affine map into an existing matrix, X = A * B + 1*b, optionally
+     * clamped at zero, as in {@link Matrix#timesPlusInto}.
+     *
+     * @param B another matrix
+     * @param bias 1 x B.n row added to every row of the product, or null
+     * @param relu whether to clamp the result at zero
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public FloatMatrix timesPlusInto(FloatMatrix B, FloatMatrix bias, boolean relu, FloatMatrix X) {
+        if (B.m != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (bias != null && (bias.m != 1 || bias.n != B.n))
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A || (bias != null && X.A == bias.A))
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        multiply(this, B, bias, relu, X);
+        return X;
+    }
+
+    /**
+     * Transposed left operand multiplication into an existing matrix,
+     * X = A' * B
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public FloatMatrix transposeTimesInto(FloatMatrix B, FloatMatrix X) {
+        if (B.m != m)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != n || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        final float[] b = B.A, c = X.A;
+        for (int k = 0; k < n; k++)
+            Arrays.fill(c, X.offset + k * X.stride, X.offset + k * X.stride + B.n, 0);
+        for (int i = 0; i < m; i++) {
+            int aRow = offset + i * stride, bRow = B.offset + i * B.stride;
+            for (int k = 0; k < n; k++) {
+                float aik = A[aRow + k];
+                int cRow = X.offset + k * X.stride;
+                for (int j = 0; j < B.n; j++)
+                    c[cRow + j] += aik * b[bRow + j];
+            }
+        }
+        return X;
+    }
+
+    /**
+     * Transposed right operand multiplication into an existing matrix,
+     * X = A * B'
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public FloatMatrix timesTransposeInto(FloatMatrix B, FloatMatrix X) {
+        if (B.n != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.m)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        final float[] b = B.A, c = X.A;
+        for (int i = 0; i < m; i++) {
+            int aRow = offset + i * stride, cRow = X.offset + i * X.stride;
+            for (int j = 0; j < B.m; j++) {
+                int bRow = B.offset + j * B.stride;
+                float s = 0;
+                for (int k = 0; k < n; k++)
+                    s += A[aRow + k] * b[bRow + k];
+                c[cRow + j] = s;
+            }
+        }
+        return X;
+    }
+
+    /**
+     * Apply a function to every element in place, A = f(A)
+     *
+     * @param func element-wise function, evaluated in double precision
+     * @return replace A by f(A)
+     */
+    public FloatMatrix applyFuncEquals(DoubleUnaryOperator func) {
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = (float) func.applyAsDouble(A[a + j]);
+        }
+        return this;
+    }
+
+    /**
+     * Generate matrix with random elements
+     *
+     * @param m Number of rows.
+     * @param n Number of colums.
+     * @return An m-by-n matrix with uniformly distributed random elements.
+     */
+    public static FloatMatrix random(int m, int n) {
+        FloatMatrix A = new FloatMatrix(m, n);
+        float[] X = A.A;
+        for (int i = 0; i < X.length; i++)
+            X[i] = (float) Math.random();
+        return A;
+    }
+
+    /* ------------------------
+   Private Methods
+ * ------------------------ */
+    /**
+     * Check if size(A) == size(B) *
+     */
+    private void checkMatrixDimensions(FloatMatrix B) {
+        if (B.m != m || B.n != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+    }
+
+    /**
+     * Check if (i,j) lies inside the matrix.
+     */
+    private void checkIndex(int i, int j) {
+        if (i < 0 || i >= m || j < 0 || j >= n)
+            throw new ArrayIndexOutOfBoundsException("(" + i + "," + j + ")");
+    }
+
+    private static void multiply(FloatMatrix A, FloatMatrix B, FloatMatrix X) {
+        multiply(A, B, null, false, X);
+    }
+
+    /**
+     * Blocked i-k-j kernel for X = A * B + 1*bias, clamped at zero if relu is
+     * set, the same as Matrix's.
+     */
+    private static void multiply(FloatMatrix A, FloatMatrix B, FloatMatrix bias, boolean relu, FloatMatrix X) {
+        final float[] a = A.A, b = B.A, c = X.A;
+        final int m = A.m, n = A.n, p = B.n;
+
+        for (int i = 0; i < m; i++) {
+            int cRow = X.offset + i * X.stride;
+            if (bias == null)
+                Arrays.fill(c, cRow, cRow + p, 0);
+            else
+                System.arraycopy(bias.A, bias.offset, c, cRow, p);
+        }
+
+        for (int ii = 0; ii < m; ii += BLOCK_I) {
+            int iEnd = Math.min(ii + BLOCK_I, m);
+            for (int kk = 0; kk < n; kk += BLOCK_K) {
+                int kEnd = Math.min(kk + BLOCK_K, n);
+                for (int jj = 0; jj < p; jj += BLOCK_J) {
+                    int jEnd = Math.min(jj + BLOCK_J, p);
+                    for (int i = ii; i < iEnd; i++) {
+                        int aRow = A.offset + i * A.stride;
+                        int cRow = X.offset + i * X.stride;
+                        for (int k = kk; k < kEnd; k++) {
+                            float aik = a[aRow + k];
+                            int bRow = B.offset + k * B.stride;
+                            for (int j = jj; j < jEnd; j++)
+                                c[cRow + j] += aik * b[bRow + j];
+                        }
+                    }
+                }
+            }
+            if (relu)
+                for (int i = ii; i < iEnd; i++) {
+                    int cRow = X.offset + i * X.stride;
+                    for (int j = cRow; j < cRow + p; j++)
+                        c[j] = Math.max(0, c[j]);
+                }
+        }
+    }
+
+    private static final long serialVersionUID = 1;
+}
@@ -0,0 +1,69 @@
+package jama;
+
+/**
+ * Row kernels behind the Matrix inner loops, working on ranges of flat
+ * arrays. This is the Java 8 version and always runs the scalar loops; the
+ * multi-release jar carries a Java 17 version under META-INF/versions/17 that
+ * switches to the Vector API when jdk.incubator.vector is available.
+ */
+public final class Kernels {
+
+    private Kernels() {
+    }
+
+    /**
+     * Whether the kernels run on the Vector API.
+     */
+    public static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * y[yo:yo+n] += a * x[xo:xo+n]
+     */
+    public static void axpy(double a, double[] x, int xo, double[] y, int yo, int n) {
+        ScalarKernels.axpy(a, x, xo, y, yo, n);
+    }
+
+    /**
+     * x[xo:xo+n] . y[yo:yo+n]
+     */
+    public static double dot(double[] x, int xo, double[] y, int yo, int n) {
+        return ScalarKernels.dot(x, xo, y, yo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] + y[yo:yo+n]
+     */
+    public static void add(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        ScalarKernels.add(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] - y[yo:yo+n]
+     */
+    public static void subtract(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        ScalarKernels.subtract(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] .* y[yo:yo+n]
+     */
+    public static void multiply(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        ScalarKernels.multiply(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = s * x[xo:xo+n]
+     */
+    public static void scale(double s, double[] x, int xo, double[] z, int zo, int n) {
+        ScalarKernels.scale(s, x, xo, z, zo, n);
+    }
+
+    /**
+     * x[xo:xo+n] = max(0, x[xo:xo+n])
+     */
+    public static void relu(double[] x, int xo, int n) {
+        ScalarKernels.relu(x, xo, n);
+    }
+}
@@ -3,6 +3,7 @@ package jama;
 import java.io.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 
 public class Matrix implements Cloneable, java.io.Serializable {
@@ -11,11 +12,21 @@ public class Matrix implements Cloneable, java.io.Serializable {
    Class variables
  * ------------------------ */
     /**
-     * Array for internal storage of elements.
+     * Array for internal storage of elements, row-major. Element (i,j) lives
+     * at A[offset + i * stride + j].
      *
      * @serial internal array storage.
      */
-    private double[][] A;
+    private final double[] A;
+
+    /**
+     * Offset of element (0,0) and distance between the starts of two
+     * consecutive rows in the storage array.
+     *
+     * @serial storage offset.
+     * @serial row stride.
+     */
+    private final int offset, stride;
 
     /**
      * Row and column dimensions.
@@ -25,6 +36,29 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     private final int m, n;
 
+    /**
+     * Tile sizes used by the blocked multiplication kernel. A BLOCK_I x
+     * BLOCK_K tile of A plus a BLOCK_K x BLOCK_J tile of B fit comfortably in
+     * a typical L1/L2 data cache.
+     */
+    private static final int BLOCK_I = 32, BLOCK_K = 128, BLOCK_J = 256;
+
+    /**
+     * Products with at least this many multiply-adds (m*n*p) are split into
+     * output tiles and run on the fork/join pool.
+     */
+    private static volatile long parallelThreshold = 1L << 21;
+
+    /**
+     * Smallest tile, in multiply-adds, worth a task of its own.
+     */
+    private static final long MIN_TASK_WORK = 1L << 16;
+
+    /**
+     * Pool running the parallel products, the common pool by default.
+     */
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
     /* ------------------------
    Constructors
  * ------------------------ */
@@ -37,7 +71,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix(int m, int n) {
         this.m = m;
         this.n = n;
-        A = new double[m][n];
+        this.offset = 0;
+        this.stride = n;
+        A = new double[m * n];
     }
 
     /**
@@ -48,23 +84,42 @@ public class Matrix implements Cloneable, java.io.Serializable {
      * @param s Fill the matrix with this scalar value.
      */
     public Matrix(int m, int n, double s) {
-        this.m = m;
-        this.n = n;
-        A = new double[m][n];
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                A[i][j] = s;
+        this(m, n);
+        Arrays.fill(A, s);
     }
 
     /**
-     * Construct a matrix quickly without checking arguments.
+     * Construct a matrix from a two-dimensional array. The elements are copied
+     * into the internal row-major storage.
      *
      * @param A Two-dimensional array of doubles.
      * @param m Number of rows.
      * @param n Number of colums.
      */
     public Matrix(double[][] A, int m, int n) {
+        this(m, n);
+        for (int i = 0; i < m; i++)
+            System.arraycopy(A[i], 0, this.A, i * n, n);
+    }
+
+    /**
+     * Construct a matrix quickly on top of an existing row-major array, without
+     * copying it. Changes to the array are visible through the matrix and vice
+     * versa.
+     *
+     * @param A Storage array.
+     * @param offset Index of element (0,0) in A.
+     * @param stride Distance between the starts of two consecutive rows.
+     * @param m Number of rows.
+     * @param n Number of colums.
+     * @exception IllegalArgumentException Storage too small for the shape.
+     */
+    public Matrix(double[] A, int offset, int stride, int m, int n) {
+        if (offset < 0 || stride < n || (m > 0 && offset + (m - 1) * stride + n > A.length))
+            throw new IllegalArgumentException("Storage does not fit the matrix shape.");
         this.A = A;
+        this.offset = offset;
+        this.stride = stride;
         this.m = m;
         this.n = n;
     }
@@ -82,10 +137,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
         n = (m != 0 ? vals.length / m : 0);
         if (m * n != vals.length)
             throw new IllegalArgumentException("Array length must be a multiple of m.");
-        A = new double[m][n];
+        this.offset = 0;
+        this.stride = n;
+        A = new double[m * n];
         for (int i = 0; i < m; i++)
             for (int j = 0; j < n; j++)
-                A[i][j] = vals[i + j * m];
+                A[i * n + j] = vals[i + j * m];
     }
 
     /* ------------------------
@@ -96,9 +153,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix copy() {
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
         for (int i = 0; i < m; i++)
-            System.arraycopy(A[i], 0, C[i], 0, n);
+            System.arraycopy(A, offset + i * stride, X.A, i * n, n);
         return X;
     }
 
@@ -111,23 +167,92 @@ public class Matrix implements Cloneable, java.io.Serializable {
     }
 
     /**
-     * Access the internal two-dimensional array.
+     * Get a view of a submatrix. The view shares storage with this matrix.
+     * Like getMatrix and setMatrix, the final indices are inclusive.
      *
-     * @return Pointer to the two-dimensional array of matrix elements.
+     * @param i0 Initial row index
+     * @param i1 Final row index
+     * @param j0 Initial column index
+     * @param j1 Final column index
+     * @return A(i0:i1,j0:j1)
+     * @exception ArrayIndexOutOfBoundsException Submatrix indices
      */
-    public double[][] getArray() {
+    public Matrix view(int i0, int i1, int j0, int j1) {
+        if (i0 < 0 || i1 >= m || i0 > i1 + 1 || j0 < 0 || j1 >= n || j0 > j1 + 1)
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+        return new Matrix(A, offset + i0 * stride + j0, stride, i1 - i0 + 1, j1 - j0 + 1);
+    }
+
+    /**
+     * Set a submatrix.
+     *
+     * @param i0 Initial row index
+     * @param i1 Final row index
+     * @param j0 Initial column index
+     * @param j1 Final column index
+     * @param X A(i0:i1,j0:j1)
+     * @exception ArrayIndexOutOfBoundsException Submatrix indices
+     */
+    public void setMatrix(int i0, int i1, int j0, int j1, Matrix X) {
+        if (i0 < 0 || i1 >= m || j0 < 0 || j1 >= n
+                || X.m != i1 - i0 + 1 || X.n != j1 - j0 + 1)
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+        for (int i = i0; i <= i1; i++)
+            System.arraycopy(X.A, X.offset + (i - i0) * X.stride, A, offset + i * stride + j0, X.n);
+    }
+
+    /**
+     * Access the internal row-major storage array.
+     *
+     * @return Pointer to the storage array, see {@link #getOffset()} and
+     * {@link #getStride()} for its layout.
+     */
+    public double[] getFlatArray() {
         return A;
     }
 
     /**
-     * Copy the internal two-dimensional array.
+     * Get the index of element (0,0) in the storage array.
+     *
+     * @return storage offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the distance between the starts of two consecutive rows in the
+     * storage array.
+     *
+     * @return row stride.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Access the internal two-dimensional array. The storage is now a flat
+     * row-major array, so this returns a copy: writes to it are not
+     * reflected in the matrix.
+     *
+     * @return Two-dimensional array copy of matrix elements.
+     * @deprecated Use {@link #getArrayCopy()}, or {@link #getFlatArray()}
+     * with {@link #getOffset()} and {@link #getStride()} for direct access.
+     */
+    @Deprecated
+    public double[][] getArray() {
+        return getArrayCopy();
+    }
+
+    /**
+     * Copy the internal array into a two-dimensional array.
      *
      * @return Two-dimensional array copy of matrix elements.
      */
     public double[][] getArrayCopy() {
         double[][] C = new double[m][n];
         for (int i = 0; i < m; i++)
-            System.arraycopy(A[i], 0, C[i], 0, n);
+            System.arraycopy(A, offset + i * stride, C[i], 0, n);
         return C;
     }
 
@@ -140,7 +265,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
         double[] vals = new double[m * n];
         for (int i = 0; i < m; i++)
             for (int j = 0; j < n; j++)
-                vals[i + j * m] = A[i][j];
+                vals[i + j * m] = A[offset + i * stride + j];
         return vals;
     }
 
@@ -152,7 +277,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public double[] getRowPackedCopy() {
         double[] vals = new double[m * n];
         for (int i = 0; i < m; i++)
-            System.arraycopy(A[i], 0, vals, i * n, n);
+            System.arraycopy(A, offset + i * stride, vals, i * n, n);
         return vals;
     }
 
@@ -183,7 +308,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
      * @exception ArrayIndexOutOfBoundsException
      */
     public double get(int i, int j) {
-        return A[i][j];
+        checkIndex(i, j);
+        return A[offset + i * stride + j];
     }
 
     /**
@@ -195,7 +321,8 @@ public class Matrix implements Cloneable, java.io.Serializable {
      * @exception ArrayIndexOutOfBoundsException
      */
     public void set(int i, int j, double s) {
-        A[i][j] = s;
+        checkIndex(i, j);
+        A[offset + i * stride + j] = s;
     }
 
     /**
@@ -205,10 +332,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix transpose() {
         Matrix X = new Matrix(n, m);
-        double[][] C = X.getArray();
-        for (int i = 0; i < m; i++)
+        double[] C = X.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
             for (int j = 0; j < n; j++)
-                C[j][i] = A[i][j];
+                C[j * m + i] = A[a + j];
+        }
         return X;
     }
 
@@ -219,10 +348,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix uminus() {
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
-        for (int i = 0; i < m; i++)
+        double[] C = X.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, c = i * n;
             for (int j = 0; j < n; j++)
-                C[i][j] = -A[i][j];
+                C[c + j] = -A[a + j];
+        }
         return X;
     }
 
@@ -235,10 +366,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix plus(Matrix B) {
         checkMatrixDimensions(B);
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
+        double[] C = X.A, BA = B.A;
         for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                C[i][j] = A[i][j] + B.A[i][j];
+            Kernels.add(A, offset + i * stride, BA, B.offset + i * B.stride, C, i * n, n);
         return X;
     }
 
@@ -250,9 +380,11 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix plusEquals(Matrix B) {
         checkMatrixDimensions(B);
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                A[i][j] = A[i][j] + B.A[i][j];
+        double[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            Kernels.add(A, a, BA, B.offset + i * B.stride, A, a, n);
+        }
         return this;
     }
 
@@ -265,10 +397,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix minus(Matrix B) {
         checkMatrixDimensions(B);
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
+        double[] C = X.A, BA = B.A;
         for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                C[i][j] = A[i][j] - B.A[i][j];
+            Kernels.subtract(A, offset + i * stride, BA, B.offset + i * B.stride, C, i * n, n);
         return X;
     }
 
@@ -280,9 +411,11 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix minusEquals(Matrix B) {
         checkMatrixDimensions(B);
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                A[i][j] = A[i][j] - B.A[i][j];
+        double[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            Kernels.subtract(A, a, BA, B.offset + i * B.stride, A, a, n);
+        }
         return this;
     }
 
@@ -295,10 +428,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix arrayTimes(Matrix B) {
         checkMatrixDimensions(B);
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
+        double[] C = X.A, BA = B.A;
         for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                C[i][j] = A[i][j] * B.A[i][j];
+            Kernels.multiply(A, offset + i * stride, BA, B.offset + i * B.stride, C, i * n, n);
         return X;
     }
 
@@ -310,9 +442,11 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix arrayTimesEquals(Matrix B) {
         checkMatrixDimensions(B);
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                A[i][j] = A[i][j] * B.A[i][j];
+        double[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            Kernels.multiply(A, a, BA, B.offset + i * B.stride, A, a, n);
+        }
         return this;
     }
 
@@ -325,10 +459,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix arrayRightDivide(Matrix B) {
         checkMatrixDimensions(B);
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
-        for (int i = 0; i < m; i++)
+        double[] C = X.A, BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride, c = i * n;
             for (int j = 0; j < n; j++)
-                C[i][j] = A[i][j] / B.A[i][j];
+                C[c + j] = A[a + j] / BA[b + j];
+        }
         return X;
     }
 
@@ -340,9 +476,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix arrayRightDivideEquals(Matrix B) {
         checkMatrixDimensions(B);
-        for (int i = 0; i < m; i++)
+        double[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride;
             for (int j = 0; j < n; j++)
-                A[i][j] = A[i][j] / B.A[i][j];
+                A[a + j] = A[a + j] / BA[b + j];
+        }
         return this;
     }
 
@@ -355,10 +494,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
     public Matrix arrayLeftDivide(Matrix B) {
         checkMatrixDimensions(B);
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
-        for (int i = 0; i < m; i++)
+        double[] C = X.A, BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride, c = i * n;
             for (int j = 0; j < n; j++)
-                C[i][j] = B.A[i][j] / A[i][j];
+                C[c + j] = BA[b + j] / A[a + j];
+        }
         return X;
     }
 
@@ -370,9 +511,12 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix arrayLeftDivideEquals(Matrix B) {
         checkMatrixDimensions(B);
-        for (int i = 0; i < m; i++)
+        double[] BA = B.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, b = B.offset + i * B.stride;
             for (int j = 0; j < n; j++)
-                A[i][j] = B.A[i][j] / A[i][j];
+                A[a + j] = BA[b + j] / A[a + j];
+        }
         return this;
     }
 
@@ -384,10 +528,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public Matrix times(double s) {
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
+        double[] C = X.A;
         for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                C[i][j] = s * A[i][j];
+            Kernels.scale(s, A, offset + i * stride, C, i * n, n);
         return X;
     }
 
@@ -398,9 +541,10 @@ public class Matrix implements Cloneable, java.io.Serializable {
      * @return replace A by s*A
      */
     public Matrix timesEquals(double s) {
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                A[i][j] = s * A[i][j];
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            Kernels.scale(s, A, a, A, a, n);
+        }
         return this;
     }
 
@@ -415,31 +559,150 @@ public class Matrix implements Cloneable, java.io.Serializable {
         if (B.m != n)
             throw new IllegalArgumentException("Matrix inner dimensions must agree.");
         Matrix X = new Matrix(m, B.n);
-        double[][] C = X.getArray();
-        double[] Bcolj = new double[n];
-        for (int j = 0; j < B.n; j++) {
+        multiply(this, B, X);
+        return X;
+    }
+
+    /**
+     * Linear algebraic matrix multiplication into an existing matrix, X = A * B
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public Matrix timesInto(Matrix B, Matrix X) {
+        if (B.m != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        multiply(this, B, X);
+        return X;
+    }
+
+    /**
+     * Fused affine map into an existing matrix, X = A * B + 1*b, optionally
+     * followed by X = max(0, X). The bias and the ReLU are applied by the
+     * multiplication kernel on each output tile while it is still in cache,
+     * instead of in extra passes over X.
+     *
+     * @param B another matrix
+     * @param bias 1 x B.n row added to every row of the product, or null
+     * @param relu whether to clamp the result at zero
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public Matrix timesPlusInto(Matrix B, Matrix bias, boolean relu, Matrix X) {
+        if (B.m != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (bias != null && (bias.m != 1 || bias.n != B.n))
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A || (bias != null && X.A == bias.A))
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        multiply(this, B, bias, relu, X);
+        return X;
+    }
+
+    /**
+     * Transposed left operand multiplication into an existing matrix,
+     * X = A' * B
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public Matrix transposeTimesInto(Matrix B, Matrix X) {
+        if (B.m != m)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != n || X.n != B.n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        final double[] b = B.A, c = X.A;
+        for (int k = 0; k < n; k++)
+            Arrays.fill(c, X.offset + k * X.stride, X.offset + k * X.stride + B.n, 0);
+        for (int i = 0; i < m; i++) {
+            int aRow = offset + i * stride, bRow = B.offset + i * B.stride;
             for (int k = 0; k < n; k++)
-                Bcolj[k] = B.A[k][j];
-            for (int i = 0; i < m; i++) {
-                double[] Arowi = A[i];
-                double s = 0;
-                for (int k = 0; k < n; k++)
-                    s += Arowi[k] * Bcolj[k];
-                C[i][j] = s;
-            }
+                Kernels.axpy(A[aRow + k], b, bRow, c, X.offset + k * X.stride, B.n);
+        }
+        return X;
+    }
+
+    /**
+     * Transposed right operand multiplication into an existing matrix,
+     * X = A * B'
+     *
+     * @param B another matrix
+     * @param X destination, must not share storage with A or B
+     * @return X
+     * @exception IllegalArgumentException Matrix inner dimensions must agree.
+     */
+    public Matrix timesTransposeInto(Matrix B, Matrix X) {
+        if (B.n != n)
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        if (X.m != m || X.n != B.m)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (X.A == A || X.A == B.A)
+            throw new IllegalArgumentException("Destination must not share storage with the operands.");
+        final double[] b = B.A, c = X.A;
+        for (int i = 0; i < m; i++) {
+            int aRow = offset + i * stride, cRow = X.offset + i * X.stride;
+            for (int j = 0; j < B.m; j++)
+                c[cRow + j] = Kernels.dot(A, aRow, b, B.offset + j * B.stride, n);
         }
         return X;
     }
 
-    public Matrix applyFunc(Function<Double, Double> func) {
+    /**
+     * Apply a function to every element, C = f(A)
+     *
+     * @param func element-wise function
+     * @return f(A)
+     */
+    public Matrix applyFunc(DoubleUnaryOperator func) {
         Matrix X = new Matrix(m, n);
-        double[][] C = X.getArray();
-        for (int i = 0; i < m; i++)
+        double[] C = X.A;
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride, c = i * n;
             for (int j = 0; j < n; j++)
-                C[i][j] = func.apply(A[i][j]);
+                C[c + j] = func.applyAsDouble(A[a + j]);
+        }
         return X;
     }
 
+    /**
+     * Apply a function to every element in place, A = f(A)
+     *
+     * @param func element-wise function
+     * @return replace A by f(A)
+     */
+    public Matrix applyFuncEquals(DoubleUnaryOperator func) {
+        for (int i = 0; i < m; i++) {
+            int a = offset + i * stride;
+            for (int j = 0; j < n; j++)
+                A[a + j] = func.applyAsDouble(A[a + j]);
+        }
+        return this;
+    }
+
+    /**
+     * Start a lazily evaluated chain of element-wise operations on A, fused
+     * into a single pass when evaluated
+     *
+     * @return expression reading A
+     * @see MatrixExpression
+     */
+    public MatrixExpression lazy() {
+        return MatrixExpression.of(this);
+    }
+
     /**
      * Generate matrix with random elements
      *
@@ -449,10 +712,9 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public static Matrix random(int m, int n) {
         Matrix A = new Matrix(m, n);
-        double[][] X = A.getArray();
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                X[i][j] = Math.random();
+        double[] X = A.A;
+        for (int i = 0; i < X.length; i++)
+            X[i] = Math.random();
         return A;
     }
 
@@ -465,13 +727,31 @@ public class Matrix implements Cloneable, java.io.Serializable {
      */
     public static Matrix identity(int m, int n) {
         Matrix A = new Matrix(m, n);
-        double[][] X = A.getArray();
-        for (int i = 0; i < m; i++)
-            for (int j = 0; j < n; j++)
-                X[i][j] = (i == j ? 1.0 : 0.0);
+        double[] X = A.A;
+        for (int i = 0; i < Math.min(m, n); i++)
+            X[i * n + i] = 1.0;
         return A;
     }
 
+    /**
+     * Set the size, in multiply-adds, from which products run in parallel.
+     *
+     * @param threshold minimum m*n*p, Long.MAX_VALUE keeps every product
+     * serial.
+     */
+    public static void setParallelThreshold(long threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * Set the pool parallel products run on.
+     *
+     * @param forkJoinPool pool to use.
+     */
+    public static void setParallelPool(ForkJoinPool forkJoinPool) {
+        pool = Objects.requireNonNull(forkJoinPool);
+    }
+
     /**
      * Print the matrix to stdout. Line the elements up in columns with a
      * Fortran-like 'Fw.d' style format.
@@ -534,7 +814,7 @@ public class Matrix implements Cloneable, java.io.Serializable {
         output.println();  // start on new line.
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < n; j++) {
-                String s = format.format(A[i][j]); // format the number
+                String s = format.format(A[offset + i * stride + j]); // format the number
                 int padding = Math.max(1, width - s.length()); // At _least_ 1 space
                 for (int k = 0; k < padding; k++)
                     output.print(' ');
@@ -556,5 +836,114 @@ public class Matrix implements Cloneable, java.io.Serializable {
             throw new IllegalArgumentException("Matrix dimensions must agree.");
     }
 
-    private static final long serialVersionUID = 1;
+    /**
+     * Check if (i,j) lies inside the matrix. Needed since a view or a padded
+     * stride would otherwise silently read a neighbouring element.
+     */
+    private void checkIndex(int i, int j) {
+        if (i < 0 || i >= m || j < 0 || j >= n)
+            throw new ArrayIndexOutOfBoundsException("(" + i + "," + j + ")");
+    }
+
+    /**
+     * X = A * B, forked into output tiles once the product is large enough.
+     */
+    private static void multiply(Matrix A, Matrix B, Matrix X) {
+        multiply(A, B, null, false, X);
+    }
+
+    /**
+     * X = A * B + 1*bias, clamped at zero if relu is set.
+     */
+    private static void multiply(Matrix A, Matrix B, Matrix bias, boolean relu, Matrix X) {
+        long work = (long) A.m * A.n * B.n;
+        if (work >= parallelThreshold && pool.getParallelism() > 1)
+            pool.invoke(new MultiplyTask(A, B, bias, relu, X, 0, A.m, 0, B.n));
+        else
+            multiply(A, B, bias, relu, X, 0, A.m, 0, B.n);
+    }
+
+    /**
+     * Blocked kernel for the tile [i0, i1) x [j0, j1) of X = A * B + 1*bias.
+     * The loops run in i-k-j order inside each block, so B and X are always
+     * walked along contiguous rows and the current block of B is reused for
+     * every row of A. Rows of X start out as the bias, and once a block of
+     * rows has seen every k it is clamped at zero if relu is set.
+     */
+    private static void multiply(Matrix A, Matrix B, Matrix bias, boolean relu, Matrix X,
+            int i0, int i1, int j0, int j1) {
+        final double[] a = A.A, b = B.A, c = X.A;
+        final int n = A.n;
+
+        for (int i = i0; i < i1; i++) {
+            int cRow = X.offset + i * X.stride;
+            if (bias == null)
+                Arrays.fill(c, cRow + j0, cRow + j1, 0);
+            else
+                System.arraycopy(bias.A, bias.offset + j0, c, cRow + j0, j1 - j0);
+        }
+
+        for (int ii = i0; ii < i1; ii += BLOCK_I) {
+            int iEnd = Math.min(ii + BLOCK_I, i1);
+            for (int kk = 0; kk < n; kk += BLOCK_K) {
+                int kEnd = Math.min(kk + BLOCK_K, n);
+                for (int jj = j0; jj < j1; jj += BLOCK_J) {
+                    int jEnd = Math.min(jj + BLOCK_J, j1);
+                    for (int i = ii; i < iEnd; i++) {
+                        int aRow = A.offset + i * A.stride;
+                        int cRow = X.offset + i * X.stride;
+                        for (int k = kk; k < kEnd; k++)
+                            Kernels.axpy(a[aRow + k], b, B.offset + k * B.stride + jj, c, cRow + jj, jEnd - jj);
+                    }
+                }
+            }
+            if (relu)
+                for (int i = ii; i < iEnd; i++)
+                    Kernels.relu(c, X.offset + i * X.stride + j0, j1 - j0);
+        }
+    }
+
+    /**
+     * Halves the longer side of its output tile until the tile is small
+     * enough, then runs the serial kernel on it. Tiles are disjoint, so no
+     * synchronization is needed on X.
+     */
+    private static final class MultiplyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Matrix A, B, bias, X;
+        private final boolean relu;
+        private final int i0, i1, j0, j1;
+
+        MultiplyTask(Matrix A, Matrix B, Matrix bias, boolean relu, Matrix X, int i0, int i1, int j0, int j1) {
+            this.A = A;
+            this.B = B;
+            this.bias = bias;
+            this.relu = relu;
+            this.X = X;
+            this.i0 = i0;
+            this.i1 = i1;
+            this.j0 = j0;
+            this.j1 = j1;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = i1 - i0, cols = j1 - j0;
+            if ((long) rows * cols * A.n <= MIN_TASK_WORK || (rows <= 1 && cols <= BLOCK_J)) {
+                multiply(A, B, bias, relu, X, i0, i1, j0, j1);
+            } else if (rows > 1 && rows * BLOCK_J >= cols * BLOCK_I) {
+                int mid = (i0 + i1) >>> 1;
+                invokeAll(new MultiplyTask(A, B, bias, relu, X, i0, mid, j0, j1),
+                        new MultiplyTask(A, B, bias, relu, X, mid, i1, j0, j1));
+            } else {
+                int mid = (j0 + j1) >>> 1;
+                invokeAll(new MultiplyTask(A, B, bias, relu, X, i0, i1, j0, mid),
+                        new MultiplyTask(A, B, bias, relu, X, i0, i1, mid, j1));
+            }
+        }
+    }
+
+    private static final long serialVersionUID = 2;
 }
@@ -0,0 +1,317 @@
+package jama;
+
+import java.util.function.*;
+
+/**
+ * Lazily evaluated chain of element-wise Matrix operations. Building an
+ * expression only records the operations; {@link #into(Matrix)} then
+ * evaluates the whole chain in a single pass, a chunk of a row at a time, so
+ * no intermediate matrix is ever materialized:
+ *
+ * <pre>
+ * a.lazy().times(s).plus(b).arrayTimes(c).into(x);
+ * </pre>
+ *
+ * computes x = (s*a + b) .* c with one read of a, b and c and one write of
+ * x. Every operand must have the expression's dimensions. Expressions keep
+ * small scratch buffers and are not thread safe.
+ */
+public abstract class MatrixExpression {
+
+    /**
+     * Columns evaluated per step. A chunk of every operand and scratch buffer
+     * stays in L1 while the whole chain runs over it.
+     */
+    private static final int CHUNK = 256;
+
+    final int m, n;
+
+    private double[] result;
+
+    MatrixExpression(int m, int n) {
+        this.m = m;
+        this.n = n;
+    }
+
+    /**
+     * Leaf expression reading X, as returned by {@link Matrix#lazy()}.
+     */
+    public static MatrixExpression of(Matrix X) {
+        return new Leaf(X);
+    }
+
+    /* ------------------------
+   Operations
+ * ------------------------ */
+    /**
+     * A + B
+     */
+    public MatrixExpression plus(Matrix B) {
+        return plus(of(B));
+    }
+
+    public MatrixExpression plus(MatrixExpression B) {
+        return new Binary(this, B, Binary.PLUS);
+    }
+
+    /**
+     * A - B
+     */
+    public MatrixExpression minus(Matrix B) {
+        return minus(of(B));
+    }
+
+    public MatrixExpression minus(MatrixExpression B) {
+        return new Binary(this, B, Binary.MINUS);
+    }
+
+    /**
+     * Element-by-element multiplication, A.*B
+     */
+    public MatrixExpression arrayTimes(Matrix B) {
+        return arrayTimes(of(B));
+    }
+
+    public MatrixExpression arrayTimes(MatrixExpression B) {
+        return new Binary(this, B, Binary.TIMES);
+    }
+
+    /**
+     * Element-by-element right division, A./B
+     */
+    public MatrixExpression arrayRightDivide(Matrix B) {
+        return arrayRightDivide(of(B));
+    }
+
+    public MatrixExpression arrayRightDivide(MatrixExpression B) {
+        return new Binary(this, B, Binary.DIVIDE);
+    }
+
+    /**
+     * Multiplication by a scalar, s*A
+     */
+    public MatrixExpression times(double s) {
+        return new Scale(this, s);
+    }
+
+    /**
+     * Unary minus, -A
+     */
+    public MatrixExpression uminus() {
+        return new Scale(this, -1);
+    }
+
+    /**
+     * Function applied to every element, f(A)
+     */
+    public MatrixExpression applyFunc(DoubleUnaryOperator func) {
+        return new Apply(this, func);
+    }
+
+    /* ------------------------
+   Evaluation
+ * ------------------------ */
+    /**
+     * Evaluates the expression into X in one pass. X may be one of the
+     * operands, as in t.lazy().times(1 - τ).plus(w.lazy().times(τ)).into(t),
+     * but must not partially overlap one.
+     *
+     * @param X destination with the expression's dimensions
+     * @return X
+     * @exception IllegalArgumentException Matrix dimensions must agree.
+     */
+    public Matrix into(Matrix X) {
+        if (X.getRowDimension() != m || X.getColumnDimension() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+
+        double[] C = X.getFlatArray();
+        boolean aliased = reads(X);
+
+        if (aliased && this.result == null)
+            this.result = new double[Math.min(n, CHUNK)];
+
+        for (int i = 0; i < m; i++) {
+            int c = X.getOffset() + i * X.getStride();
+            for (int j0 = 0; j0 < n; j0 += CHUNK) {
+                int len = Math.min(CHUNK, n - j0);
+                if (aliased) {
+                    eval(i, j0, len, this.result, 0);
+                    System.arraycopy(this.result, 0, C, c + j0, len);
+                } else {
+                    eval(i, j0, len, C, c + j0);
+                }
+            }
+        }
+        return X;
+    }
+
+    /**
+     * Evaluates the expression into a new matrix.
+     */
+    public Matrix toMatrix() {
+        return into(new Matrix(m, n));
+    }
+
+    public int getRowDimension() {
+        return m;
+    }
+
+    public int getColumnDimension() {
+        return n;
+    }
+
+    /**
+     * Writes columns [j0, j0 + len) of row i into out[o, o + len).
+     */
+    abstract void eval(int i, int j0, int len, double[] out, int o);
+
+    /**
+     * Whether X's storage is read by the expression. Throws if it is read
+     * through a different layout, since chunks would then overwrite elements
+     * that are still to be read.
+     */
+    abstract boolean reads(Matrix X);
+
+    /* ------------------------
+   Nodes
+ * ------------------------ */
+    private static final class Leaf extends MatrixExpression {
+
+        private final Matrix X;
+
+        Leaf(Matrix X) {
+            super(X.getRowDimension(), X.getColumnDimension());
+            this.X = X;
+        }
+
+        // Offset of element (i,j) in the storage array.
+        int index(int i, int j) {
+            return X.getOffset() + i * X.getStride() + j;
+        }
+
+        @Override
+        void eval(int i, int j0, int len, double[] out, int o) {
+            System.arraycopy(X.getFlatArray(), index(i, j0), out, o, len);
+        }
+
+        @Override
+        boolean reads(Matrix Y) {
+            if (Y.getFlatArray() != X.getFlatArray())
+                return false;
+            if (Y.getOffset() != X.getOffset() || Y.getStride() != X.getStride())
+                throw new IllegalArgumentException("Destination must not partially overlap an operand.");
+            return true;
+        }
+    }
+
+    private static final class Scale extends MatrixExpression {
+
+        private final MatrixExpression A;
+        private final double s;
+
+        Scale(MatrixExpression A, double s) {
+            super(A.m, A.n);
+            this.A = A;
+            this.s = s;
+        }
+
+        @Override
+        void eval(int i, int j0, int len, double[] out, int o) {
+            if (A instanceof Leaf) {
+                Leaf leaf = (Leaf) A;
+                Kernels.scale(s, leaf.X.getFlatArray(), leaf.index(i, j0), out, o, len);
+            } else {
+                A.eval(i, j0, len, out, o);
+                Kernels.scale(s, out, o, out, o, len);
+            }
+        }
+
+        @Override
+        boolean reads(Matrix X) {
+            return A.reads(X);
+        }
+    }
+
+    private static final class Apply extends MatrixExpression {
+
+        private final MatrixExpression A;
+        private final DoubleUnaryOperator func;
+
+        Apply(MatrixExpression A, DoubleUnaryOperator func) {
+            super(A.m, A.n);
+            this.A = A;
+            this.func = func;
+        }
+
+        @Override
+        void eval(int i, int j0, int len, double[] out, int o) {
+            A.eval(i, j0, len, out, o);
+            for (int j = o; j < o + len; j++)
+                out[j] = func.applyAsDouble(out[j]);
+        }
+
+        @Override
+        boolean reads(Matrix X) {
+            return A.reads(X);
+        }
+    }
+
+    private static final class Binary extends MatrixExpression {
+
+        static final int PLUS = 0, MINUS = 1, TIMES = 2, DIVIDE = 3;
+
+        private final MatrixExpression A, B;
+        private final int op;
+
+        // Holds a chunk of B unless B is a leaf, allocated on first use.
+        private double[] scratch;
+
+        Binary(MatrixExpression A, MatrixExpression B, int op) {
+            super(A.m, A.n);
+            if (B.m != A.m || B.n != A.n)
+                throw new IllegalArgumentException("Matrix dimensions must agree.");
+            this.A = A;
+            this.B = B;
+            this.op = op;
+        }
+
+        @Override
+        void eval(int i, int j0, int len, double[] out, int o) {
+            A.eval(i, j0, len, out, o);
+
+            double[] b;
+            int bo;
+            if (B instanceof Leaf) {
+                b = ((Leaf) B).X.getFlatArray();
+                bo = ((Leaf) B).index(i, j0);
+            } else {
+                if (this.scratch == null)
+                    this.scratch = new double[Math.min(n, CHUNK)];
+                B.eval(i, j0, len, this.scratch, 0);
+                b = this.scratch;
+                bo = 0;
+            }
+
+            switch (op) {
+                case PLUS:
+                    Kernels.add(out, o, b, bo, out, o, len);
+                    break;
+                case MINUS:
+                    Kernels.subtract(out, o, b, bo, out, o, len);
+                    break;
+                case TIMES:
+                    Kernels.multiply(out, o, b, bo, out, o, len);
+                    break;
+                default:
+                    for (int j = 0; j < len; j++)
+                        out[o + j] /= b[bo + j];
+            }
+        }
+
+        @Override
+        boolean reads(Matrix X) {
+            boolean a = A.reads(X);
+            return B.reads(X) || a;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package jama;
+
+/**
+ * Plain loop implementations of the {@link Kernels} operations, used on every
+ * JVM without the Vector API and for short rows.
+ */
+final class ScalarKernels {
+
+    private ScalarKernels() {
+    }
+
+    static void axpy(double a, double[] x, int xo, double[] y, int yo, int n) {
+        for (int i = 0; i < n; i++)
+            y[yo + i] += a * x[xo + i];
+    }
+
+    static double dot(double[] x, int xo, double[] y, int yo, int n) {
+        double s = 0;
+        for (int i = 0; i < n; i++)
+            s += x[xo + i] * y[yo + i];
+        return s;
+    }
+
+    static void add(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        for (int i = 0; i < n; i++)
+            z[zo + i] = x[xo + i] + y[yo + i];
+    }
+
+    static void subtract(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        for (int i = 0; i < n; i++)
+            z[zo + i] = x[xo + i] - y[yo + i];
+    }
+
+    static void multiply(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        for (int i = 0; i < n; i++)
+            z[zo + i] = x[xo + i] * y[yo + i];
+    }
+
+    static void scale(double s, double[] x, int xo, double[] z, int zo, int n) {
+        for (int i = 0; i < n; i++)
+            z[zo + i] = s * x[xo + i];
+    }
+
+    static void relu(double[] x, int xo, int n) {
+        for (int i = xo; i < xo + n; i++)
+            x[i] = Math.max(0, x[i]);
+    }
+}
@@ -0,0 +1,95 @@
+package jama;
+
+/**
+ * Java 17 version of the row kernels. The Vector API implementation is used
+ * when the jdk.incubator.vector module is in the boot layer (run with
+ * --add-modules jdk.incubator.vector), the row is at least one vector long
+ * and -Djama.vector=false was not given; otherwise the scalar loops run.
+ */
+public final class Kernels {
+
+    private static final boolean VECTOR = !"false".equals(System.getProperty("jama.vector"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // Only read when VECTOR is set, so VectorKernels never loads without the module.
+    private static final int MIN_LENGTH = VECTOR ? VectorKernels.length() : Integer.MAX_VALUE;
+
+    private Kernels() {
+    }
+
+    /**
+     * Whether the kernels run on the Vector API.
+     */
+    public static boolean isVectorized() {
+        return VECTOR;
+    }
+
+    /**
+     * y[yo:yo+n] += a * x[xo:xo+n]
+     */
+    public static void axpy(double a, double[] x, int xo, double[] y, int yo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.axpy(a, x, xo, y, yo, n);
+        else
+            ScalarKernels.axpy(a, x, xo, y, yo, n);
+    }
+
+    /**
+     * x[xo:xo+n] . y[yo:yo+n]
+     */
+    public static double dot(double[] x, int xo, double[] y, int yo, int n) {
+        if (n >= MIN_LENGTH)
+            return VectorKernels.dot(x, xo, y, yo, n);
+        return ScalarKernels.dot(x, xo, y, yo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] + y[yo:yo+n]
+     */
+    public static void add(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.add(x, xo, y, yo, z, zo, n);
+        else
+            ScalarKernels.add(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] - y[yo:yo+n]
+     */
+    public static void subtract(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.subtract(x, xo, y, yo, z, zo, n);
+        else
+            ScalarKernels.subtract(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = x[xo:xo+n] .* y[yo:yo+n]
+     */
+    public static void multiply(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.multiply(x, xo, y, yo, z, zo, n);
+        else
+            ScalarKernels.multiply(x, xo, y, yo, z, zo, n);
+    }
+
+    /**
+     * z[zo:zo+n] = s * x[xo:xo+n]
+     */
+    public static void scale(double s, double[] x, int xo, double[] z, int zo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.scale(s, x, xo, z, zo, n);
+        else
+            ScalarKernels.scale(s, x, xo, z, zo, n);
+    }
+
+    /**
+     * x[xo:xo+n] = max(0, x[xo:xo+n])
+     */
+    public static void relu(double[] x, int xo, int n) {
+        if (n >= MIN_LENGTH)
+            VectorKernels.relu(x, xo, n);
+        else
+            ScalarKernels.relu(x, xo, n);
+    }
+}
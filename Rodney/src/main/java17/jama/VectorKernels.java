@@ -0,0 +1,86 @@
+package jama;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Vector API implementations of the {@link Kernels} operations, at the
+ * widest vector shape the CPU prefers (4 doubles on AVX2, 8 on AVX-512).
+ * Tails shorter than a vector fall back to scalar code.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    static int length() {
+        return S.length();
+    }
+
+    static void axpy(double a, double[] x, int xo, double[] y, int yo, int n) {
+        DoubleVector va = DoubleVector.broadcast(S, a);
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            DoubleVector vx = DoubleVector.fromArray(S, x, xo + i);
+            DoubleVector vy = DoubleVector.fromArray(S, y, yo + i);
+            vx.fma(va, vy).intoArray(y, yo + i);
+        }
+        for (; i < n; i++)
+            y[yo + i] += a * x[xo + i];
+    }
+
+    static double dot(double[] x, int xo, double[] y, int yo, int n) {
+        DoubleVector acc = DoubleVector.zero(S);
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            DoubleVector vx = DoubleVector.fromArray(S, x, xo + i);
+            DoubleVector vy = DoubleVector.fromArray(S, y, yo + i);
+            acc = vx.fma(vy, acc);
+        }
+        double s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+            s += x[xo + i] * y[yo + i];
+        return s;
+    }
+
+    static void add(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length())
+            DoubleVector.fromArray(S, x, xo + i).add(DoubleVector.fromArray(S, y, yo + i)).intoArray(z, zo + i);
+        for (; i < n; i++)
+            z[zo + i] = x[xo + i] + y[yo + i];
+    }
+
+    static void subtract(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length())
+            DoubleVector.fromArray(S, x, xo + i).sub(DoubleVector.fromArray(S, y, yo + i)).intoArray(z, zo + i);
+        for (; i < n; i++)
+            z[zo + i] = x[xo + i] - y[yo + i];
+    }
+
+    static void multiply(double[] x, int xo, double[] y, int yo, double[] z, int zo, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length())
+            DoubleVector.fromArray(S, x, xo + i).mul(DoubleVector.fromArray(S, y, yo + i)).intoArray(z, zo + i);
+        for (; i < n; i++)
+            z[zo + i] = x[xo + i] * y[yo + i];
+    }
+
+    static void scale(double s, double[] x, int xo, double[] z, int zo, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length())
+            DoubleVector.fromArray(S, x, xo + i).mul(s).intoArray(z, zo + i);
+        for (; i < n; i++)
+            z[zo + i] = s * x[xo + i];
+    }
+
+    static void relu(double[] x, int xo, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length())
+            DoubleVector.fromArray(S, x, xo + i).max(0).intoArray(x, xo + i);
+        for (; i < n; i++)
+            x[xo + i] = Math.max(0, x[xo + i]);
+    }
+}